@@ -1,30 +1,53 @@
 package databean.ap;
 
 import com.squareup.javapoet.*;
+import databean.DataBean;
 import databean.DataClass;
+import databean.IndexListener;
+import databean.Interner;
 import databean.MetaClass;
 
+import javax.annotation.Nullable;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 
 public class BeanGenerator {
     public static final String INIT_METHOD_NAME = "of";
+    /** Estimated length of a property value used to pre-size toString() buffer */
+    private static final int TO_STRING_VALUE_CAPACITY = 8;
 
     private final ProcessingEnvironment procEnv;
     private final BeanMetadataResolver beanMetadataResolver;
     private final Map<TypeName, DataClassInfo> dataBeans;
     private final DefaultValueGenerator defaultValueGenerator;
     private final BeanPropertyResolver beanPropertyResolver;
+    private final MetadataGenerator metadataGenerator;
+    private final CodecGenerator codecGenerator;
+    private final JsonGenerator jsonGenerator;
+    private final RecordGenerator recordGenerator;
+    private final ColumnsGenerator columnsGenerator;
+    private final IndexGenerator indexGenerator;
+    private final DiffGenerator diffGenerator;
+    private final ViewGenerator viewGenerator;
+    private final MapperGenerator mapperGenerator;
 
     public BeanGenerator(ProcessingEnvironment procEnv, BeanMetadataResolver beanMetadataResolver, Map<TypeName, DataClassInfo> dataBeans) {
         this.procEnv = procEnv;
@@ -32,6 +55,15 @@ public class BeanGenerator {
         this.beanMetadataResolver = beanMetadataResolver;
         defaultValueGenerator = new DefaultValueGenerator(procEnv, beanMetadataResolver);
         this.beanPropertyResolver = new BeanPropertyResolver(procEnv);
+        this.metadataGenerator = new MetadataGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.codecGenerator = new CodecGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.jsonGenerator = new JsonGenerator(procEnv, beanPropertyResolver, dataBeans, this, codecGenerator);
+        this.recordGenerator = new RecordGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.columnsGenerator = new ColumnsGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.indexGenerator = new IndexGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.diffGenerator = new DiffGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.viewGenerator = new ViewGenerator(procEnv, beanPropertyResolver, dataBeans, this);
+        this.mapperGenerator = new MapperGenerator(procEnv, beanPropertyResolver, dataBeans, this);
     }
 
     public void generate(DataClassInfo dataClassInfo) {
@@ -39,6 +71,14 @@ public class BeanGenerator {
             if (dataClassInfo.enclosingClass == null) {
                 writeDataBean(dataClassInfo);
                 writeMetaClass(dataClassInfo);
+                metadataGenerator.writeMetadataClass(dataClassInfo);
+                codecGenerator.writeCodecClass(dataClassInfo);
+                jsonGenerator.writeJsonClass(dataClassInfo);
+                recordGenerator.writeRecordClass(dataClassInfo);
+                columnsGenerator.writeColumnsClass(dataClassInfo);
+                indexGenerator.writeIndexClass(dataClassInfo);
+                diffGenerator.writeDiffClass(dataClassInfo);
+                viewGenerator.writeViewClass(dataClassInfo);
             }
         } catch (IOException ex) {
             throw new RuntimeException(ex);
@@ -46,6 +86,18 @@ public class BeanGenerator {
     }
 
 
+    /**
+     * Generates DataBeanMapper of every package after all the data classes are generated
+     */
+    public void generateMappers() {
+        try {
+            mapperGenerator.writeMapperClasses();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+
     private void writeMetaClass(DataClassInfo dataClassInfo) throws IOException {
         TypeSpec.Builder metaClass = TypeSpec
                 .interfaceBuilder(dataClassInfo.metaClassName())
@@ -69,6 +121,8 @@ public class BeanGenerator {
 
         if (!dataClassInfo.isAbstract)
             generateInitializers(metaClass, dataClassInfo);
+        else
+            generateAbstractInitializers(metaClass, dataClassInfo);
 
         //final List<BeanPropertyInfo> propertyInfos = beanPropertyResolver.beanProperties(dataClassInfo);
 
@@ -109,6 +163,14 @@ public class BeanGenerator {
                 }
             }
 
+            if (property.isUnboxed) {
+                metaClass.addMethod(MethodSpec
+                        .methodBuilder(unboxedAccessorName(property))
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .returns(property.storageTypeName())
+                        .build());
+            }
+
             // substitute dataClass getter return value by metaClass
             if (property.isDataClass) {
                 if (property.hasDefaultValue) {
@@ -167,6 +229,29 @@ public class BeanGenerator {
             }
         }
 
+        generateWithInterface(metaClass, dataClassInfo);
+        if (!dataClassInfo.isAbstract)
+            generatePathCopies(metaClass, dataClassInfo);
+        if (!dataClassInfo.isAbstract)
+            metaClass.addMethod(MethodSpec.methodBuilder("deepCopy")
+                    .addJavadoc("Copy of the value and it's nested data class values, immutable values are shared\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                    .returns(dataClassInfo.metaClassName())
+                    .addStatement("return from(this)")
+                    .build());
+        if (isFreezable(dataClassInfo)) {
+            metaClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addJavadoc("Makes the bean and it's nested values unmodifiable, nested beans shared with the copies " +
+                            "are frozen as well.\nOnly beans can be frozen: views, records and cursors throw UnsupportedOperationException\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(dataClassInfo.metaClassName())
+                    .build());
+            metaClass.addMethod(MethodSpec.methodBuilder("isFrozen")
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(TypeName.BOOLEAN)
+                    .build());
+        }
+
         // copy custom constructors
         if (!dataClassInfo.isAbstract) {
             for (ExecutableElement customConstructor : dataClassInfo.customConstructors) {
@@ -225,6 +310,7 @@ public class BeanGenerator {
             beanClass.superclass(beanSuperClass.beanClassName());
         } else {
             beanSuperClass = null;
+            beanClass.addSuperinterface(DataBean.class);
         }
 
         final MethodSpec.Builder constructorBuilder = MethodSpec
@@ -311,11 +397,17 @@ public class BeanGenerator {
             /*if (dataClassInfo.className().simpleName().equals("ICat"))
                 Math.random();*/
 
-            // Field
-            if (propertyInfo.beanSuperclassProperty == null)
-                beanClass.addField(FieldSpec.builder(typeName, property.name, Modifier.PROTECTED)
-                        .addAnnotations(valueAnnotations)
+            // Unboxed accessor
+            if (property.isUnboxed && (propertyInfo.beanSuperclassProperty == null ||
+                    !propertyInfo.beanSuperclassProperty.isUnboxed)) {
+                beanClass.addMethod(MethodSpec
+                        .methodBuilder(unboxedAccessorName(property))
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(property.storageTypeName())
+                        .addStatement("return $L", fieldGet(dataClassInfo, "this", property.name))
                         .build());
+            }
 
             // Constructor
             if (property.isInitial) {
@@ -347,7 +439,9 @@ public class BeanGenerator {
                                     Modifier.PROTECTED : Modifier.PUBLIC)
                             //.addParameter(getTypeName(property.type), property.name)
                             .addParameter(parameterSpec)
+                            .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
                             .addCode(generateSetterBody(dataClassInfo, propertyInfo))
+                            .addCode(genMarkDirty(dataClassInfo, propertyInfo))
                             .build());
                 } else {
                     if (property.isBeanNameDeclaration) {
@@ -357,7 +451,9 @@ public class BeanGenerator {
                                 .addModifiers(property.isReadOnly && !propertyInfo.readOnlyOverridesMutable ?
                                         Modifier.PROTECTED : Modifier.PUBLIC)
                                 .addParameter(parameterSpec)
+                                .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
                                 .addCode(generateSetterBody(dataClassInfo, propertyInfo))
+                                .addCode(genMarkDirty(dataClassInfo, propertyInfo))
                                 .build());
                     } else {
                         if (!property.isReadOnly) {
@@ -368,7 +464,9 @@ public class BeanGenerator {
                                     .addModifiers(Modifier.PUBLIC)
                                     .returns(dataClassInfo.metaClassName())
                                     .addParameter(parameterSpec)
+                                    .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
                                     .addCode(generateSetterBody(dataClassInfo, propertyInfo))
+                                    .addCode(genMarkDirty(dataClassInfo, propertyInfo))
                                     .addStatement("return this")
                                     .build());
                         }
@@ -399,9 +497,12 @@ public class BeanGenerator {
                                 //.endControlFlow()
                                 .addStatement("throw new RuntimeException(e)")
                                 .endControlFlow()*/
-                                .addStatement("$T cloned = new $T()", dataClassInfo.beanClassName(), dataClassInfo.beanClassName())
-                                .addStatement("this.$$fill(cloned)")
-                                .addStatement("cloned.$N = $N", property.name, property.name)
+                                // copy constructor does not call $init() so no default values are evaluated
+                                .addStatement("$T cloned = new $T(this)", dataClassInfo.beanClassName(), dataClassInfo.beanClassName())
+                                .addCode(fieldWrite(dataClassInfo, "cloned", property.name, CodeBlock.of("$N", property.name)))
+                                .addCode(dataClassInfo.cacheHashCode ?
+                                        genCarryHashCode(dataClassInfo, property) :
+                                        CodeBlock.builder().build())
                                 .addStatement("return cloned")
                                 .build());
                     }
@@ -438,6 +539,8 @@ public class BeanGenerator {
         constructorBuilder.addStatement("$$init()");
         beanClass.addMethod(constructorBuilder.build());
 
+        generateFields(beanClass, dataClassInfo);
+
         // $init method that is called after initialization is done and sets default values
 
         final MethodSpec.Builder $init = MethodSpec
@@ -454,35 +557,111 @@ public class BeanGenerator {
             $fill.addStatement("super.$$fill(cloned)");
         }
 
+        // $default(index) sets the default value of a single property like $init() does
+        final MethodSpec.Builder $default = MethodSpec.methodBuilder("$default")
+                .returns(TypeName.VOID)
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("switch (index)");
+        final List<String> propertyNames = properties.stream()
+                .map(it -> it.property.name)
+                .collect(Collectors.toList());
+
         for (DataClassInfo.Property property : dataClassInfo.properties) {
         /*for (BeanPropertyInfo propertyInfo : properties) {
             final DataClassInfo.Property property = propertyInfo.property;*/
+            final CodeBlock defaultValue;
             if (property.hasDefaultValue) {
                 //if (property.defaultValueExpression == null) {
-                $init.addStatement("this.$N = $T.super.$N()", property.name,
-                        dataClassInfo.metaClassName(), property.readAccessorName());
+                defaultValue = CodeBlock.of("$T.super.$N()", dataClassInfo.metaClassName(), property.readAccessorName());
                 /*} else {
                     $init.addStatement("this.$N = $L", property.name, property.defaultValueExpression);
                 }*/
-            } else if (!property.isInitial && property.notNullAnnotation != null && !property.type.getKind().isPrimitive()) {
-                $init.addStatement("this.$N = " + defaultValueGenerator.generateDefaultValueFor(dataClassInfo, property),
-                        property.name);
+            } else if (!property.isInitial && property.notNullAnnotation != null && !property.type.getKind().isPrimitive() &&
+                    !fieldProperty(dataClassInfo, property.name).isUnboxed) {
+                // unboxed field is already initialized with zero value
+                defaultValue = CodeBlock.of(defaultValueGenerator.generateDefaultValueFor(dataClassInfo, property));
+            } else {
+                continue;
+            }
+            final FlagBit lazyBit = ownLazyBits(dataClassInfo).get(property.name);
+            if (lazyBit != null) {
+                // lazy default is set by the first read, $default() only clears the presence bit
+                generateLazyAccessor(beanClass, property, defaultValue, lazyBit);
+                $default.addCode("case $L:\n$>", propertyNames.indexOf(property.name))
+                        .addStatement("this.$N &= ~$L", lazyBit.word, lazyBit.maskLiteral())
+                        .addStatement("return$<");
+                continue;
             }
+            final CodeBlock defaultValueInit = fieldWrite(dataClassInfo, "this", property.name, defaultValue);
+            $init.addCode(defaultValueInit);
+            $default.addCode("case $L:\n$>", propertyNames.indexOf(property.name))
+                    .addCode(defaultValueInit)
+                    .addStatement("return$<");
         }
+        $default.addCode("default:\n$>");
+        if (beanSuperClass != null)
+            $default.addStatement("super.$$default(index)");
+        $default.addCode("$<").endControlFlow();
+        final Map<String, FlagBit> ownFlagBits = ownFlagBits(dataClassInfo);
         for (BeanPropertyInfo property : properties) {
-            if (property.beanSuperclassProperty == null) {
+            if (property.beanSuperclassProperty == null && !ownFlagBits.containsKey(property.property.name)) {
                 $fill.addStatement("cloned.$N = this.$N", property.property.name, property.property.name);
             }
         }
+        for (String flagWord : flagWords(ownFlagBits))
+            $fill.addStatement("cloned.$N = this.$N", flagWord, flagWord);
+        for (String lazyWord : flagWords(ownLazyBits(dataClassInfo)))
+            $fill.addStatement("cloned.$N = this.$N", lazyWord, lazyWord);
 
         beanClass.addMethod($init.build());
+        beanClass.addMethod($default.build());
         beanClass.addMethod($fill.build());
 
+        generateObjectMethods(beanClass, dataClassInfo, beanSuperClass, properties);
+        generateIndexedAccessors(beanClass, dataClassInfo, beanSuperClass, properties);
+        if (hasIndexedProperties(dataClassInfo) && (beanSuperClass == null || !hasIndexedProperties(beanSuperClass)))
+            generateIndexRegistration(beanClass);
+        if (tracksChanges(dataClassInfo))
+            generateChangeTracking(beanClass, dataClassInfo, beanSuperClass, properties);
+        if (isConcurrent(dataClassInfo))
+            generateAtomicAccessors(beanClass, dataClassInfo, beanSuperClass, properties);
+        if (isFreezable(dataClassInfo))
+            generateFreezing(beanClass, dataClassInfo, beanSuperClass);
+        generateDeepCopy(beanClass, dataClassInfo, beanSuperClass);
+        if (isImmutable(dataClassInfo, new ArrayList<>()))
+            beanClass.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Interner.class),
+                    dataClassInfo.metaClassName()), "$INTERNER", Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T<>()", Interner.class)
+                    .build());
+
         // if class has initial parameters add non-public empty constructor
         if (properties.stream().anyMatch(it -> it.property.isInitial))
             beanClass.addMethod(MethodSpec.constructorBuilder()
                     .build());
 
+        // copy constructor used by copy-setters: copies fields directly and skips $init()
+        final MethodSpec.Builder copyConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PROTECTED)
+                .addParameter(dataClassInfo.beanClassName(), "source");
+        if (beanSuperClass != null)
+            copyConstructor.addStatement("super(source)");
+        for (BeanPropertyInfo property : properties) {
+            if (property.beanSuperclassProperty == null && !property.property.isComputed &&
+                    !ownFlagBits.containsKey(property.property.name))
+                copyConstructor.addStatement("this.$N = source.$N", property.property.name, property.property.name);
+        }
+        for (String flagWord : flagWords(ownFlagBits))
+            copyConstructor.addStatement("this.$N = source.$N", flagWord, flagWord);
+        for (String lazyWord : flagWords(ownLazyBits(dataClassInfo)))
+            copyConstructor.addStatement("this.$N = source.$N", lazyWord, lazyWord);
+        beanClass.addMethod(copyConstructor.build());
+
+        if (!dataClassInfo.isAbstract) {
+            generateWithBuilder(beanClass, dataClassInfo, properties);
+            if (properties.stream().anyMatch(it -> it.property.isInitial))
+                generateSteppedBuilder(beanClass, dataClassInfo, properties);
+        }
+
         // nested data beans
         dataBeans.values().stream()
                 .filter(it -> it.enclosingClass != null &&
@@ -500,6 +679,956 @@ public class BeanGenerator {
     }
 
 
+    /**
+     * Generates With interface: a copy-with builder that changes several properties of a copy
+     * and publishes the copy with build(). Properties inherited from other data classes are redeclared
+     * to return this With type.
+     */
+    private void generateWithInterface(TypeSpec.Builder metaClass, DataClassInfo dataClassInfo) {
+        final ClassName withClassName = withClassName(dataClassInfo);
+        final TypeSpec.Builder withInterface = TypeSpec.interfaceBuilder(withClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+        dataClassInfo.superClasses.forEach(it -> withInterface.addSuperinterface(withClassName(it)));
+
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (!hasWithMethod(dataClassInfo, property))
+                continue;
+            withInterface.addMethod(MethodSpec.methodBuilder(property.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addParameter(ParameterSpec.builder(propertyTypeName(property), property.name)
+                            .addAnnotations(valueAnnotations(property))
+                            .build())
+                    .returns(withClassName)
+                    .build());
+        }
+        withInterface.addMethod(MethodSpec.methodBuilder("build")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(dataClassInfo.metaClassName())
+                .build());
+        metaClass.addType(withInterface.build());
+
+        if (!dataClassInfo.isAbstract) {
+            metaClass.addMethod(MethodSpec.methodBuilder("with")
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(withClassName)
+                    .build());
+        }
+    }
+
+
+    /**
+     * Generates path-copy methods for the properties of nested data classes: user.ofContactAddressStreet("x")
+     * returns a copy of the user with a copy of the contact with a copy of the address with the changed street.
+     * Only the beans on the path are copied by with() of each bean, all other values are shared.
+     * Null nested values are created by of() or rejected if the nested data class has initial properties.
+     */
+    private void generatePathCopies(TypeSpec.Builder metaClass, DataClassInfo dataClassInfo) {
+        final Map<String, List<DataClassInfo.Property>> paths = new LinkedHashMap<>();
+        final Set<String> ambiguous = new HashSet<>();
+        // property copy-setters have the same names
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo))
+            ambiguous.add("of" + capitalize(propertyInfo.property.name));
+        collectPaths(dataClassInfo, new ArrayList<>(), new ArrayList<>(Collections.singletonList(dataClassInfo)),
+                paths, ambiguous);
+
+        for (Map.Entry<String, List<DataClassInfo.Property>> entry : paths.entrySet()) {
+            if (ambiguous.contains(entry.getKey()))
+                continue;
+            final List<DataClassInfo.Property> path = entry.getValue();
+            final DataClassInfo.Property leaf = path.get(path.size() - 1);
+            final MethodSpec.Builder method = MethodSpec.methodBuilder(entry.getKey())
+                    .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                    .returns(dataClassInfo.metaClassName())
+                    .addParameter(ParameterSpec.builder(propertyTypeName(leaf), leaf.name)
+                            .addAnnotations(valueAnnotations(leaf))
+                            .build());
+
+            // nested values on the path: $contact, $contactAddress
+            final List<String> names = new ArrayList<>();
+            DataClassInfo owner = dataClassInfo;
+            String name = "";
+            for (int i = 0; i < path.size() - 1; i++) {
+                final DataClassInfo.Property property = path.get(i);
+                final DataClassInfo nestedClass = requireNonNull(resolveDataClass(property.type));
+                final String parent = i == 0 ? "this" : names.get(i - 1);
+                name = i == 0 ? property.name : name + capitalize(property.name);
+                names.add("$" + name);
+                final TypeName typeName = nestedClass.metaClassName();
+                if (property.notNullAnnotation != null) {
+                    method.addStatement("final $T $N = $N.$N()", typeName, "$" + name, parent,
+                            property.readAccessorName());
+                } else if (beanPropertyResolver.beanProperties(nestedClass).stream()
+                        .noneMatch(it -> it.property.isInitial)) {
+                    method.addStatement("$T $N = $N.$N()", typeName, "$" + name, parent, property.readAccessorName())
+                            .addStatement("if ($N == null) $N = $T.of()", "$" + name, "$" + name, typeName);
+                } else {
+                    method.addStatement("final $T $N = $T.requireNonNull($N.$N(), \"$T.$N\")", typeName,
+                            "$" + name, Objects.class, parent, property.readAccessorName(), owner.className(),
+                            property.name);
+                }
+                owner = nestedClass;
+            }
+            if (leaf.notNullAnnotation != null)
+                method.addCode(genCheckNotNull(owner, leaf.name));
+
+            // copies are built from the leaf to the root
+            CodeBlock value = CodeBlock.of("$N", leaf.name);
+            for (int i = path.size() - 1; i >= 0; i--) {
+                value = CodeBlock.of("$N.with().$N($L).build()", i == 0 ? "this" : names.get(i - 1),
+                        path.get(i).name, value);
+            }
+            metaClass.addMethod(method
+                    .addStatement("return $L", value)
+                    .build());
+        }
+    }
+
+
+    private void collectPaths(DataClassInfo dataClassInfo, List<DataClassInfo.Property> path,
+                              List<DataClassInfo> classes, Map<String, List<DataClassInfo.Property>> paths,
+                              Set<String> ambiguous)
+    {
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (property.isComputed || property.isFixed)
+                continue;
+            final List<DataClassInfo.Property> propertyPath = new ArrayList<>(path);
+            propertyPath.add(property);
+            if (propertyPath.size() > 1) {
+                final String name = "of" + propertyPath.stream()
+                        .map(it -> capitalize(it.name))
+                        .collect(Collectors.joining());
+                if (paths.put(name, propertyPath) != null)
+                    ambiguous.add(name);
+            }
+            final DataClassInfo nestedClass = property.isDataClass ? resolveDataClass(property.type) : null;
+            if (nestedClass != null && !nestedClass.isAbstract && !classes.contains(nestedClass)) {
+                classes.add(nestedClass);
+                collectPaths(nestedClass, propertyPath, classes, paths, ambiguous);
+                classes.remove(classes.size() - 1);
+            }
+        }
+    }
+
+
+    /**
+     * Generates with() method and the bean's With implementation that changes fields of one scratch copy.
+     * Fixed properties that can be changed in a supertype throw an exception like ofXXX() does.
+     */
+    private void generateWithBuilder(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                     List<BeanPropertyInfo> properties)
+    {
+        final ClassName withClassName = withClassName(dataClassInfo);
+        final ClassName withBeanClassName = dataClassInfo.beanClassName().nestedClass("With");
+
+        beanClass.addMethod(MethodSpec.methodBuilder("with")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(withClassName)
+                .addStatement("return new $T(new $T(this))", withBeanClassName, dataClassInfo.beanClassName())
+                .build());
+
+        final TypeSpec.Builder withBean = TypeSpec.classBuilder(withBeanClassName)
+                .addModifiers(Modifier.PROTECTED, Modifier.STATIC)
+                .addSuperinterface(withClassName)
+                .addField(dataClassInfo.beanClassName(), "bean", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(dataClassInfo.beanClassName(), "bean")
+                        .addStatement("this.bean = bean")
+                        .build());
+
+        for (BeanPropertyInfo propertyInfo : properties) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (!hasWithMethod(dataClassInfo, property))
+                continue;
+            // property type may be narrowed in this data class: implement also methods inherited from supertypes
+            for (TypeName typeName : withMethodTypes(dataClassInfo, property.name)) {
+                final MethodSpec.Builder setter = MethodSpec.methodBuilder(property.name)
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ParameterSpec.builder(typeName, property.name)
+                                .addAnnotations(valueAnnotations(property))
+                                .build())
+                        .returns(withClassName);
+                if (property.isFixed) {
+                    setter.addStatement("throw new UnsupportedOperationException($S)", "attempt to change fixed property");
+                } else {
+                    if (property.notNullAnnotation != null)
+                        setter.addCode(genCheckNotNull(dataClassInfo, property.name));
+                    if (typeName.equals(propertyTypeName(property)))
+                        setter.addCode(fieldWrite(dataClassInfo, "bean", property.name,
+                                CodeBlock.of("$N", property.name)));
+                    else
+                        setter.addCode(fieldWrite(dataClassInfo, "bean", property.name,
+                                CodeBlock.of("($T) $N", propertyTypeName(property), property.name)));
+                    setter.addStatement("return this");
+                }
+                withBean.addMethod(setter.build());
+            }
+        }
+
+        withBean.addMethod(MethodSpec.methodBuilder("build")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(dataClassInfo.metaClassName())
+                .addStatement("final $T built = $T.requireNonNull(this.bean, $S)", dataClassInfo.beanClassName(), Objects.class,
+                        "already built")
+                // builder must not modify published instance
+                .addStatement("this.bean = null")
+                .addStatement("return built")
+                .build());
+        beanClass.addType(withBean.build());
+    }
+
+
+    /**
+     * Generates the stepped builder that implements all staging interfaces of the meta class,
+     * so the bean and one builder instance are the only allocations of a staged build.
+     */
+    private void generateSteppedBuilder(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                        List<BeanPropertyInfo> properties)
+    {
+        final List<DataClassInfo.Property> initProperties = properties.stream()
+                .map(it -> it.property)
+                .filter(it -> it.isInitial)
+                .collect(Collectors.toList());
+
+        final TypeSpec.Builder builder = TypeSpec.classBuilder(steppedBuilderClassName(dataClassInfo))
+                .addModifiers(Modifier.PROTECTED, Modifier.STATIC)
+                .addField(dataClassInfo.beanClassName(), "bean", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addStatement("this.bean = new $T()", dataClassInfo.beanClassName())
+                        .build());
+
+        for (int i = 0; i < initProperties.size(); i++) {
+            final DataClassInfo.Property initProperty = initProperties.get(i);
+            final DataClassInfo.Property nextProperty = i < initProperties.size() - 1 ? initProperties.get(i + 1) : null;
+            builder.addSuperinterface(dataClassInfo.metaClassName().nestedClass("$" + initProperty.name));
+
+            final MethodSpec.Builder setter = MethodSpec
+                    .methodBuilder(initProperty.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ParameterSpec.builder(propertyTypeName(initProperty), initProperty.name)
+                            .addAnnotations(valueAnnotations(initProperty)).build())
+                    .returns(nextProperty != null ?
+                            dataClassInfo.metaClassName().nestedClass("$" + nextProperty.name) :
+                            dataClassInfo.metaClassName());
+            if (nextProperty != null) {
+                setter.addStatement("bean.$N($N)", initProperty.setterName(), initProperty.name)
+                        .addStatement("return this");
+            } else {
+                setter.addStatement("final $T built = $T.requireNonNull(this.bean, $S)",
+                                dataClassInfo.beanClassName(), Objects.class, "already built")
+                        .addStatement("built.$N($N)", initProperty.setterName(), initProperty.name)
+                        .addStatement("built.$$init()")
+                        .addCode(tracksChanges(dataClassInfo) ?
+                                CodeBlock.of("built.$$clearDirty();\n") : CodeBlock.builder().build())
+                        // builder must not modify published instance
+                        .addStatement("this.bean = null")
+                        .addStatement(dataClassInfo.intern ? "return $T.intern(built)" : "return built",
+                                dataClassInfo.metaClassName());
+            }
+            builder.addMethod(setter.build());
+        }
+        beanClass.addType(builder.build());
+    }
+
+
+    private ClassName steppedBuilderClassName(DataClassInfo dataClassInfo) {
+        return dataClassInfo.beanClassName().nestedClass("Builder");
+    }
+
+
+    private ClassName withClassName(DataClassInfo dataClassInfo) {
+        return dataClassInfo.metaClassName().nestedClass("With");
+    }
+
+
+    /**
+     * With interface declares a method for each property that can be changed in a copy or
+     * was changeable in one of supertypes
+     */
+    private boolean hasWithMethod(DataClassInfo dataClassInfo, DataClassInfo.Property property) {
+        if (property.isComputed)
+            return false;
+        if (!property.isFixed)
+            return true;
+        return !withMethodTypes(dataClassInfo, property.name).isEmpty();
+    }
+
+
+    /**
+     * Parameter types of With methods declared for the property in this data class and it's supertypes
+     */
+    private Set<TypeName> withMethodTypes(DataClassInfo dataClassInfo, String propertyName) {
+        final Set<TypeName> types = new LinkedHashSet<>();
+        beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .map(it -> it.property)
+                .filter(it -> it.name.equals(propertyName) && !it.isComputed && !it.isFixed)
+                .forEach(it -> types.add(propertyTypeName(it)));
+        for (DataClassInfo superClass : dataClassInfo.superClasses)
+            types.addAll(withMethodTypes(superClass, propertyName));
+        return types;
+    }
+
+
+    TypeName propertyTypeName(DataClassInfo.Property property) {
+        if (property.isDataClass)
+            return requireNonNull(resolveDataClass(property.type)).metaClassName();
+        else
+            return property.typeName();
+    }
+
+
+    private static List<AnnotationSpec> valueAnnotations(DataClassInfo.Property property) {
+        if (property.notNullAnnotation != null)
+            return Collections.singletonList(AnnotationSpec.get(property.notNullAnnotation));
+        else
+            return Collections.emptyList();
+    }
+
+
+    /**
+     * Generates DataBean's index-based accessors: switch over the property indexes in the order of bean properties.
+     * Bean superclass properties are a prefix of the bean properties, so the indexes are the same in the whole
+     * bean hierarchy.
+     */
+    private void generateIndexedAccessors(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                          @Nullable DataClassInfo beanSuperClass, List<BeanPropertyInfo> properties)
+    {
+        if (beanSuperClass != null) {
+            final List<BeanPropertyInfo> superProperties = beanPropertyResolver.beanProperties(beanSuperClass);
+            for (int i = 0; i < superProperties.size(); i++) {
+                if (i >= properties.size() || !superProperties.get(i).property.name.equals(properties.get(i).property.name))
+                    throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                            "' changes the property order of it's bean superclass");
+            }
+        }
+
+        final MethodSpec.Builder getter = MethodSpec.methodBuilder("$get")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("switch (index)");
+        final MethodSpec.Builder setter = MethodSpec.methodBuilder("$set")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "index")
+                .addParameter(Object.class, "value")
+                .beginControlFlow("switch (index)");
+
+        for (int i = 0; i < properties.size(); i++) {
+            final DataClassInfo.Property property = properties.get(i).property;
+            getter.addCode("case $L:\n", i).addStatement("$>return $L$<", indexedValueRead(dataClassInfo, property));
+            setter.addCode("case $L:\n$>", i);
+            if (property.isReadOnly) {
+                setter.addStatement("throw new $T($S)", UnsupportedOperationException.class, "Read-only property");
+            } else {
+                setter.addStatement("this.$N(($T) value)", property.writeAccessorName(), propertyTypeName(property).box())
+                        .addStatement("return");
+            }
+            setter.addCode("$<");
+        }
+        beanClass.addMethod(getter
+                .addCode("default:\n").addStatement("$>throw new $T($S + index)$<", IndexOutOfBoundsException.class,
+                        "Property index: ")
+                .endControlFlow()
+                .build());
+        beanClass.addMethod(setter
+                .addCode("default:\n").addStatement("$>throw new $T($S + index)$<", IndexOutOfBoundsException.class,
+                        "Property index: ")
+                .endControlFlow()
+                .build());
+
+        for (TypeKind kind : Arrays.asList(TypeKind.BOOLEAN, TypeKind.INT, TypeKind.LONG, TypeKind.FLOAT, TypeKind.DOUBLE)) {
+            final String kindName = capitalize(kind.name().toLowerCase());
+            final TypeName kindType = TypeName.get(procEnv.getTypeUtils().getPrimitiveType(kind));
+            final MethodSpec.Builder primitiveGetter = MethodSpec.methodBuilder("$get" + kindName)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(kindType)
+                    .addParameter(TypeName.INT, "index")
+                    .beginControlFlow("switch (index)");
+            final MethodSpec.Builder primitiveSetter = MethodSpec.methodBuilder("$set" + kindName)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.INT, "index")
+                    .addParameter(kindType, "value")
+                    .beginControlFlow("switch (index)");
+
+            for (int i = 0; i < properties.size(); i++) {
+                final DataClassInfo.Property property = properties.get(i).property;
+                if (property.storageKind() != kind)
+                    continue;
+                primitiveGetter.addCode("case $L:\n", i)
+                        .addStatement("$>return $L$<", indexedValueRead(dataClassInfo, property));
+                primitiveSetter.addCode("case $L:\n$>", i);
+                if (property.isReadOnly) {
+                    primitiveSetter.addStatement("throw new $T($S)", UnsupportedOperationException.class,
+                            "Read-only property");
+                } else {
+                    primitiveSetter.addStatement("this.$N(value)", property.writeAccessorName())
+                            .addStatement("return");
+                }
+                primitiveSetter.addCode("$<");
+            }
+            beanClass.addMethod(primitiveGetter
+                    .addCode("default:\n").addStatement("$>throw new $T($S + index)$<", IllegalArgumentException.class,
+                            "Property is not of type " + kind.name().toLowerCase() + ": ")
+                    .endControlFlow()
+                    .build());
+            beanClass.addMethod(primitiveSetter
+                    .addCode("default:\n").addStatement("$>throw new $T($S + index)$<", IllegalArgumentException.class,
+                            "Property is not of type " + kind.name().toLowerCase() + ": ")
+                    .endControlFlow()
+                    .build());
+        }
+    }
+
+
+    /**
+     * Value of the property as it is stored in the bean: computed properties are read through their accessors
+     */
+    private CodeBlock indexedValueRead(DataClassInfo dataClassInfo, DataClassInfo.Property property) {
+        if (property.isComputed)
+            return CodeBlock.of("this.$N()", property.readAccessorName());
+        return fieldGet(dataClassInfo, "this", property.name);
+    }
+
+
+    /**
+     * Generates equals(), hashCode() and toString() based on bean fields.
+     * Fields declared in a bean superclass are compared by chaining to super.equals()/super.$hashCode().
+     */
+    private void generateObjectMethods(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                       @Nullable DataClassInfo beanSuperClass, List<BeanPropertyInfo> properties)
+    {
+        if (dataClassInfo.cacheHashCode && properties.stream().anyMatch(it -> !it.property.isReadOnly))
+            throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                    "' can cache it's hashCode only if all it's properties are read-only");
+
+        // fields declared in this bean
+        final List<DataClassInfo.Property> ownFields = properties.stream()
+                .filter(it -> it.beanSuperclassProperty == null && !it.property.isComputed)
+                .map(it -> it.property)
+                .collect(Collectors.toList());
+
+        final MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(Object.class, "o")
+                .addStatement("if (this == o) return true");
+        if (dataClassInfo.isAbstract) {
+            equals.addStatement("if (o == null || getClass() != o.getClass()) return false");
+        } else {
+            equals.addStatement("if (o == null) return false");
+            // views, records and cursors compare themselves through accessors, so equality stays symmetric
+            equals.addStatement("if (getClass() != o.getClass()) return ($L) && o.equals(this)",
+                    genIsOtherImplementation(dataClassInfo, "o"));
+        }
+        if (beanSuperClass != null)
+            equals.addStatement("if (!super.equals(o)) return false");
+        final Map<String, FlagBit> ownFlagBits = ownFlagBits(dataClassInfo);
+        if (!ownFields.isEmpty() || dataClassInfo.cacheHashCode) {
+            equals.addStatement("$T other = ($T) o", dataClassInfo.beanClassName(), dataClassInfo.beanClassName());
+            if (dataClassInfo.cacheHashCode)
+                equals.addStatement("if (this.$$hash != 0 && other.$$hash != 0 && this.$$hash != other.$$hash) return false");
+            // packed flags are compared by whole words
+            for (String flagWord : flagWords(ownFlagBits))
+                equals.addStatement("if (this.$N != other.$N) return false", flagWord, flagWord);
+            for (DataClassInfo.Property property : ownFields) {
+                if (ownFlagBits.containsKey(property.name))
+                    continue;
+                // lazy fields that are not set yet are compared by their default values
+                equals.addStatement("if ($L) return false", genValuesDiffer(property,
+                        fieldRead(dataClassInfo, "this", property.name), fieldRead(dataClassInfo, "other", property.name)));
+            }
+        }
+        equals.addStatement("return true");
+        beanClass.addMethod(equals.build());
+
+        // $hashCode() calculates the hash chaining to the bean superclass and is never cached
+        final MethodSpec.Builder $hashCode = MethodSpec.methodBuilder("$hashCode")
+                .addModifiers(Modifier.PROTECTED)
+                .returns(TypeName.INT)
+                .addStatement(beanSuperClass != null ? "int result = super.$$hashCode()" : "int result = 0");
+        for (DataClassInfo.Property property : ownFields) {
+            $hashCode.addStatement("result = 31 * result + $L",
+                    genValueHashCode(property, fieldRead(dataClassInfo, "this", property.name)));
+        }
+        $hashCode.addStatement("return result");
+        beanClass.addMethod($hashCode.build());
+
+        final MethodSpec.Builder hashCode = MethodSpec.methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT);
+        if (dataClassInfo.cacheHashCode) {
+            // racy single-check idiom like String.hashCode(): zero means not calculated yet
+            beanClass.addField(FieldSpec.builder(TypeName.INT, "$hash", Modifier.PRIVATE).build());
+            hashCode.addStatement("int h = this.$$hash")
+                    .beginControlFlow("if (h == 0)")
+                    .addStatement("h = $$hashCode()")
+                    .addStatement("this.$$hash = h")
+                    .endControlFlow()
+                    .addStatement("return h");
+        } else {
+            hashCode.addStatement("return $$hashCode()");
+        }
+        beanClass.addMethod(hashCode.build());
+
+        // toString() covers all bean properties including inherited ones, so only one StringBuilder is used
+        beanClass.addMethod(genToString(dataClassInfo, properties,
+                property -> fieldRead(dataClassInfo, "this", property.name)));
+    }
+
+
+    /**
+     * Generates equals(), hashCode() and toString() of the view, record or cursor of the data class through read
+     * accessors. The value is equal to the bean and the other implementations of the same data class with the same
+     * property values and has the same hash as the bean, nothing is copied.
+     */
+    void generateValueObjectMethods(TypeSpec.Builder implClass, DataClassInfo dataClassInfo) {
+        final List<BeanPropertyInfo> properties = beanPropertyResolver.beanProperties(dataClassInfo);
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+
+        final MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(Object.class, "o")
+                .addStatement("if (this == o) return true")
+                .addStatement("if (o == null || o.getClass() != $T.class && !($L)) return false",
+                        dataClassInfo.beanClassName(), genIsOtherImplementation(dataClassInfo, "o"))
+                .addStatement("final $T other = ($T) o", metaClassName, metaClassName);
+        final MethodSpec.Builder hashCode = MethodSpec.methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("int result = 0");
+        // the bean hashes it's fields in the order of the bean superclass chain
+        for (DataClassInfo.Property property : beanFields(dataClassInfo)) {
+            equals.addStatement("if ($L) return false", genValuesDiffer(property,
+                    genAccessorRead(property, "this"), genAccessorRead(property, "other")));
+            hashCode.addStatement("result = 31 * result + $L",
+                    genValueHashCode(property, genAccessorRead(property, "this")));
+        }
+        implClass.addMethod(equals.addStatement("return true").build());
+        implClass.addMethod(hashCode.addStatement("return result").build());
+        implClass.addMethod(genToString(dataClassInfo, properties, property -> genAccessorRead(property, "this")));
+    }
+
+
+    /**
+     * Expression that is true when the value is a view, record or cursor of exactly this data class
+     */
+    private CodeBlock genIsOtherImplementation(DataClassInfo dataClassInfo, String value) {
+        final CodeBlock.Builder check = CodeBlock.builder()
+                .add("$N instanceof $T", value, dataClassInfo.viewClassName());
+        if (recordGenerator.hasRecordLayout(dataClassInfo))
+            check.add(" || $N instanceof $T", value, dataClassInfo.recordClassName());
+        return check.add(" || $N instanceof $T", value, dataClassInfo.columnsClassName().nestedClass("Cursor"))
+                .build();
+    }
+
+
+    private static CodeBlock genAccessorRead(DataClassInfo.Property property, String target) {
+        return CodeBlock.of("$N.$N()", target, property.isUnboxed ?
+                unboxedAccessorName(property) : property.readAccessorName());
+    }
+
+
+    private static MethodSpec genToString(DataClassInfo dataClassInfo, List<BeanPropertyInfo> properties,
+                                          Function<DataClassInfo.Property, CodeBlock> read)
+    {
+        final List<DataClassInfo.Property> allFields = properties.stream()
+                .map(it -> it.property)
+                .filter(it -> !it.isComputed)
+                .collect(Collectors.toList());
+        final String className = dataClassInfo.metaClassName().simpleName();
+        int capacity = className.length() + 2;
+        for (DataClassInfo.Property property : allFields)
+            capacity += property.name.length() + 3 + TO_STRING_VALUE_CAPACITY;
+
+        final MethodSpec.Builder toString = MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("final $T sb = new $T($L)", StringBuilder.class, StringBuilder.class, capacity)
+                .addStatement("sb.append($S)", className + "{");
+        for (int i = 0; i < allFields.size(); i++) {
+            final DataClassInfo.Property property = allFields.get(i);
+            toString.addStatement("sb.append($S).append($L)", (i > 0 ? ", " : "") + property.name + "=",
+                    read.apply(property));
+        }
+        return toString.addStatement("return sb.append('}').toString()").build();
+    }
+
+
+    /**
+     * Copies cached hash to the clone that differs from this bean only in one field.
+     * The hash is a polynomial over all bean fields, so only the term of the changed field is recalculated.
+     */
+    private CodeBlock genCarryHashCode(DataClassInfo dataClassInfo, DataClassInfo.Property property) {
+        final List<DataClassInfo.Property> fields = beanFields(dataClassInfo);
+        int weight = 1;
+        for (int i = fields.size() - 1; i >= 0 && !fields.get(i).name.equals(property.name); i--)
+            weight *= 31;
+        final DataClassInfo.Property fieldProperty = fieldProperty(dataClassInfo, property.name);
+        return CodeBlock.builder()
+                .beginControlFlow("if (this.$$hash != 0)")
+                .addStatement("cloned.$$hash = this.$$hash + $L * ($L - $L)", weight,
+                        genValueHashCode(fieldProperty, CodeBlock.of("$N", property.name)),
+                        genValueHashCode(fieldProperty, fieldRead(dataClassInfo, "this", property.name)))
+                .endControlFlow()
+                .build();
+    }
+
+
+    /**
+     * All fields of the bean including fields declared in bean superclasses in the order they are hashed
+     */
+    private List<DataClassInfo.Property> beanFields(DataClassInfo dataClassInfo) {
+        final List<DataClassInfo.Property> fields = new ArrayList<>();
+        if (!dataClassInfo.superClasses.isEmpty() && dataClassInfo.inheritFromSuperclass)
+            fields.addAll(beanFields(dataClassInfo.superClasses.get(0)));
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            if (propertyInfo.beanSuperclassProperty == null && !propertyInfo.property.isComputed)
+                fields.add(propertyInfo.property);
+        }
+        return fields;
+    }
+
+
+    /**
+     * Declares bean fields. Compact layout packs boolean fields into flag words and orders fields by size.
+     */
+    private void generateFields(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo) {
+        final Map<String, FlagBit> ownFlagBits = ownFlagBits(dataClassInfo);
+        final List<FieldSpec> fields = new ArrayList<>();
+        final Map<FieldSpec, Integer> fieldSizes = new HashMap<>();
+
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (propertyInfo.beanSuperclassProperty != null || property.isComputed ||
+                    ownFlagBits.containsKey(property.name))
+                continue;
+            final FieldSpec field;
+            // volatile fields of concurrent beans are written with release and read with acquire semantics
+            final Modifier[] modifiers = isConcurrent(dataClassInfo) ?
+                    new Modifier[] {Modifier.PROTECTED, Modifier.VOLATILE} : new Modifier[] {Modifier.PROTECTED};
+            if (property.isUnboxed)
+                field = FieldSpec.builder(property.storageTypeName(), property.name, modifiers)
+                        .build();
+            else
+                field = FieldSpec.builder(propertyTypeName(property), property.name, modifiers)
+                        .addAnnotations(valueAnnotations(property))
+                        .build();
+            fields.add(field);
+            fieldSizes.put(field, storageSize(property.storageKind()));
+        }
+        for (String flagWord : flagWords(ownFlagBits)) {
+            final boolean isLong = ownFlagBits.values().stream().anyMatch(it -> it.isLong);
+            final FieldSpec field = FieldSpec.builder(isLong ? TypeName.LONG : TypeName.INT, flagWord, Modifier.PROTECTED)
+                    .build();
+            fields.add(field);
+            fieldSizes.put(field, isLong ? 8 : 4);
+        }
+
+        final Map<String, FlagBit> ownLazyBits = ownLazyBits(dataClassInfo);
+        for (String lazyWord : flagWords(ownLazyBits)) {
+            final boolean isLong = ownLazyBits.values().stream().anyMatch(it -> it.isLong);
+            final FieldSpec field = FieldSpec.builder(isLong ? TypeName.LONG : TypeName.INT, lazyWord, Modifier.PROTECTED)
+                    .build();
+            fields.add(field);
+            fieldSizes.put(field, isLong ? 8 : 4);
+        }
+
+        if (dataClassInfo.compactLayout) {
+            // stable sort: wider fields first so smaller ones fill the gaps at the end of the object
+            fields.sort((field1, field2) -> fieldSizes.get(field2) - fieldSizes.get(field1));
+        }
+        fields.forEach(beanClass::addField);
+    }
+
+
+    private static int storageSize(TypeKind kind) {
+        switch (kind) {
+            case LONG:
+            case DOUBLE:
+                return 8;
+            case SHORT:
+            case CHAR:
+                return 2;
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            default:
+                // int, float and (compressed) references
+                return 4;
+        }
+    }
+
+
+    /**
+     * Bit of a boolean field packed into a flag word of a compact layout bean
+     */
+    private static class FlagBit {
+        final String word;
+        final boolean isLong;
+        final long mask;
+
+        FlagBit(String word, boolean isLong, long mask) {
+            this.word = word;
+            this.isLong = isLong;
+            this.mask = mask;
+        }
+
+        CodeBlock maskLiteral() {
+            return CodeBlock.of("0x$L" + (isLong ? "L" : ""), Long.toHexString(mask));
+        }
+    }
+
+
+    /**
+     * Boolean fields declared in this bean that are packed into flag words
+     */
+    private Map<String, FlagBit> ownFlagBits(DataClassInfo dataClassInfo) {
+        final Map<String, FlagBit> flagBits = new LinkedHashMap<>();
+        if (!dataClassInfo.compactLayout)
+            return flagBits;
+
+        final List<DataClassInfo.Property> booleanFields = beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .filter(it -> it.beanSuperclassProperty == null && !it.property.isComputed)
+                .map(it -> it.property)
+                .filter(it -> it.storageKind() == TypeKind.BOOLEAN)
+                .collect(Collectors.toList());
+        // flag word names must not clash with the words of bean superclasses
+        int depth = 0;
+        for (DataClassInfo it = beanSuperClass(dataClassInfo); it != null; it = beanSuperClass(it))
+            depth++;
+        final boolean isLong = booleanFields.size() > 32;
+        for (int i = 0; i < booleanFields.size(); i++) {
+            final int word = isLong ? i / 64 : 0;
+            final int bit = isLong ? i % 64 : i;
+            flagBits.put(booleanFields.get(i).name, new FlagBit(
+                    "$flags" + depth + (word > 0 ? "_" + word : ""), isLong, 1L << bit));
+        }
+        return flagBits;
+    }
+
+
+    private static Collection<String> flagWords(Map<String, FlagBit> flagBits) {
+        return flagBits.values().stream().map(it -> it.word).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+
+    @Nullable
+    private FlagBit flagBit(DataClassInfo dataClassInfo, String name) {
+        for (DataClassInfo it = dataClassInfo; it != null; it = beanSuperClass(it)) {
+            final FlagBit flagBit = ownFlagBits(it).get(name);
+            if (flagBit != null)
+                return flagBit;
+        }
+        return null;
+    }
+
+
+    /**
+     * Presence bits of the lazy fields declared in this bean, a set bit means the field value is set
+     */
+    private Map<String, FlagBit> ownLazyBits(DataClassInfo dataClassInfo) {
+        final List<DataClassInfo.Property> lazyFields = beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .filter(it -> it.beanSuperclassProperty == null && !it.property.isComputed)
+                .map(it -> it.property)
+                .filter(it -> it.isLazy)
+                .collect(Collectors.toList());
+        int depth = 0;
+        for (DataClassInfo it = beanSuperClass(dataClassInfo); it != null; it = beanSuperClass(it))
+            depth++;
+        final Map<String, FlagBit> lazyBits = new LinkedHashMap<>();
+        final boolean isLong = lazyFields.size() > 32;
+        for (int i = 0; i < lazyFields.size(); i++) {
+            final int word = isLong ? i / 64 : 0;
+            final int bit = isLong ? i % 64 : i;
+            lazyBits.put(lazyFields.get(i).name, new FlagBit(
+                    "$lazy" + depth + (word > 0 ? "_" + word : ""), isLong, 1L << bit));
+        }
+        return lazyBits;
+    }
+
+
+    @Nullable
+    private FlagBit lazyBit(DataClassInfo dataClassInfo, String name) {
+        for (DataClassInfo it = dataClassInfo; it != null; it = beanSuperClass(it)) {
+            final FlagBit lazyBit = ownLazyBits(it).get(name);
+            if (lazyBit != null)
+                return lazyBit;
+        }
+        return null;
+    }
+
+
+    boolean isLazyField(DataClassInfo dataClassInfo, String name) {
+        return lazyBit(dataClassInfo, name) != null;
+    }
+
+
+    private static String lazyAccessorName(String name) {
+        return "$lazy" + capitalize(name);
+    }
+
+
+    private static String peekAccessorName(String name) {
+        return "$peek" + capitalize(name);
+    }
+
+
+    /**
+     * Accessors of the lazy field: $lazyXxx() sets the default value on the first read, $peekXxx() returns the
+     * default value without setting it, so equals(), hashCode() and serialization do not modify the bean
+     */
+    private void generateLazyAccessor(TypeSpec.Builder beanClass, DataClassInfo.Property property,
+                                      CodeBlock defaultValue, FlagBit lazyBit)
+    {
+        beanClass.addMethod(MethodSpec.methodBuilder(peekAccessorName(property.name))
+                .addModifiers(Modifier.PROTECTED)
+                .returns(propertyTypeName(property))
+                .addStatement("return (this.$N & $L) != 0 ? this.$N : $L", lazyBit.word, lazyBit.maskLiteral(),
+                        property.name, defaultValue)
+                .build());
+        beanClass.addMethod(MethodSpec.methodBuilder(lazyAccessorName(property.name))
+                .addModifiers(Modifier.PROTECTED)
+                .returns(propertyTypeName(property))
+                .beginControlFlow("if ((this.$N & $L) == 0)", lazyBit.word, lazyBit.maskLiteral())
+                .addStatement("this.$N = $L", property.name, defaultValue)
+                .addStatement("this.$N |= $L", lazyBit.word, lazyBit.maskLiteral())
+                .endControlFlow()
+                .addStatement("return this.$N", property.name)
+                .build());
+    }
+
+
+    /**
+     * Expression that reads the bean field of the property from the target bean like the getter does:
+     * the default value of the lazy field is set on the first read
+     */
+    private CodeBlock fieldGet(DataClassInfo dataClassInfo, String target, String name) {
+        if (lazyBit(dataClassInfo, name) != null)
+            return CodeBlock.of("$L.$N()", target, lazyAccessorName(name));
+        return fieldRead(dataClassInfo, target, name);
+    }
+
+
+    /**
+     * Expression that reads the bean field of the property from the target bean without modifying it:
+     * the lazy field that is not set yet reads as it's default value
+     */
+    CodeBlock fieldRead(DataClassInfo dataClassInfo, String target, String name) {
+        if (lazyBit(dataClassInfo, name) != null)
+            return CodeBlock.of("$L.$N()", target, peekAccessorName(name));
+        final FlagBit flagBit = flagBit(dataClassInfo, name);
+        if (flagBit == null)
+            return CodeBlock.of("$L.$N", target, name);
+        return CodeBlock.of("(($L.$N & $L) != 0)", target, flagBit.word, flagBit.maskLiteral());
+    }
+
+
+    /**
+     * Statement that writes the value to the bean field of the property in the target bean
+     */
+    CodeBlock fieldWrite(DataClassInfo dataClassInfo, String target, String name, CodeBlock value) {
+        final FlagBit lazyBit = lazyBit(dataClassInfo, name);
+        if (lazyBit != null)
+            return CodeBlock.builder()
+                    .addStatement("$L.$N = $L", target, name, value)
+                    .addStatement("$L.$N |= $L", target, lazyBit.word, lazyBit.maskLiteral())
+                    .build();
+        final FlagBit flagBit = flagBit(dataClassInfo, name);
+        if (flagBit == null)
+            return CodeBlock.builder().addStatement("$L.$N = $L", target, name, value).build();
+        return CodeBlock.builder()
+                .addStatement("$L.$N = $L ? $L.$N | $L : $L.$N & ~$L", target, flagBit.word, value,
+                        target, flagBit.word, flagBit.maskLiteral(), target, flagBit.word, flagBit.maskLiteral())
+                .build();
+    }
+
+
+    @Nullable
+    static DataClassInfo beanSuperClass(DataClassInfo dataClassInfo) {
+        return !dataClassInfo.superClasses.isEmpty() && dataClassInfo.inheritFromSuperclass ?
+                dataClassInfo.superClasses.get(0) : null;
+    }
+
+
+    /**
+     * Property that declares the bean field with the given name in this bean or one of it's bean superclasses
+     */
+    private DataClassInfo.Property fieldProperty(DataClassInfo dataClassInfo, String name) {
+        return beanFields(dataClassInfo).stream()
+                .filter(it -> it.name.equals(name))
+                .findAny()
+                .orElseThrow(() -> new RuntimeException("No bean field for property '" +
+                        dataClassInfo.className().simpleName() + "." + name + "'"));
+    }
+
+
+    static String unboxedAccessorName(DataClassInfo.Property property) {
+        return property.name + "As" + capitalize(property.storageTypeName().toString());
+    }
+
+
+    /**
+     * Expression that is true when two values of the property differ. Primitive values are not boxed.
+     * Values are compared by the kind of bean field, so unboxed fields are compared as primitives.
+     */
+    static CodeBlock genValuesDiffer(DataClassInfo.Property property, CodeBlock left, CodeBlock right) {
+        switch (property.storageKind()) {
+            case FLOAT:
+                return CodeBlock.of("$T.compare($L, $L) != 0", Float.class, left, right);
+            case DOUBLE:
+                return CodeBlock.of("$T.compare($L, $L) != 0", Double.class, left, right);
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+            case LONG:
+                return CodeBlock.of("$L != $L", left, right);
+            default:
+                return CodeBlock.of("!$T.equals($L, $L)", Objects.class, left, right);
+        }
+    }
+
+
+    /**
+     * Hash expression of the property value that does not box primitive values
+     */
+    static CodeBlock genValueHashCode(DataClassInfo.Property property, CodeBlock value) {
+        switch (property.storageKind()) {
+            case BOOLEAN:
+                return CodeBlock.of("($L ? 1231 : 1237)", value);
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+                return CodeBlock.of("$L", value);
+            case LONG:
+                return CodeBlock.of("$T.hashCode($L)", Long.class, value);
+            case FLOAT:
+                return CodeBlock.of("$T.hashCode($L)", Float.class, value);
+            case DOUBLE:
+                return CodeBlock.of("$T.hashCode($L)", Double.class, value);
+            default:
+                return CodeBlock.of("$T.hashCode($L)", Objects.class, value);
+        }
+    }
+
+
     private void generateInitializers(TypeSpec.Builder metadataClass, DataClassInfo dataClassInfo)
     {
         final List<BeanPropertyInfo> properties = beanPropertyResolver.beanProperties(dataClassInfo);
@@ -515,73 +1644,87 @@ public class BeanGenerator {
                 .returns(dataClassInfo.metaClassName());
 
         if (!initProperties.isEmpty()) {
-            // staging init method
+            // staging init method: all stages are implemented by one builder instance
             final MethodSpec.Builder stagingInitMethodBuilder = MethodSpec
                     .methodBuilder("of")
                     .addModifiers(dataClassInfo.isAbstract ? Modifier.PROTECTED : Modifier.PUBLIC, Modifier.STATIC)
                     .returns(ClassName.get("", "$" + initProperties.get(0).name))
-                    .addStatement("$T bean = new $T()", dataClassInfo.beanClassName(), dataClassInfo.beanClassName())
-                    .addStatement("return new $$" + initProperties.get(0).name + "(bean)");
+                    .addStatement("return new $T()", steppedBuilderClassName(dataClassInfo));
             metadataClass.addMethod(stagingInitMethodBuilder.build());
 
             for (int i = 0; i < initProperties.size(); i++) {
                 final DataClassInfo.Property initProperty = initProperties.get(i);
                 final DataClassInfo.Property nextProperty = i < initProperties.size() - 1 ? initProperties.get(i + 1) : null;
 
-                final List<AnnotationSpec> valueAnnotations = new ArrayList<>();
-                if (initProperty.notNullAnnotation != null) {
-                    valueAnnotations.add(AnnotationSpec.get(initProperty.notNullAnnotation));
-                }
-
-                final TypeName typeName;
-                if (initProperty.isDataClass)
-                    typeName = requireNonNull(resolveDataClass(initProperty.type)).metaClassName();
-                else
-                    typeName = initProperty.typeName();
+                final TypeName typeName = propertyTypeName(initProperty);
 
                 // of(...) method parameters
                 initMethodBuilder.addParameter(ParameterSpec.builder(typeName, initProperty.name)
-                        .addAnnotations(valueAnnotations).build());
+                        .addAnnotations(valueAnnotations(initProperty)).build());
 
-                final TypeSpec.Builder stagingSetterWrapper = TypeSpec
-                        .classBuilder("$" + initProperty.name)
+                final TypeSpec.Builder stagingSetterInterface = TypeSpec
+                        .interfaceBuilder("$" + initProperty.name)
                         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                        .addField(FieldSpec.builder(
-                                dataClassInfo.beanClassName(), "bean", Modifier.PRIVATE).build())
-                        .addMethod(MethodSpec.constructorBuilder()
-                                .addParameter(dataClassInfo.beanClassName(), "bean")
-                                .addStatement("this.bean = bean")
-                                .build()
-                        );
-                final MethodSpec.Builder setter = MethodSpec
-                        .methodBuilder(initProperty.name)
-                        .addModifiers(Modifier.PUBLIC)
-                        .addParameter(ParameterSpec.builder(typeName, initProperty.name)
-                                .addAnnotations(valueAnnotations).build())
-                        .addStatement("bean." + initProperty.setterName() + "($N)", initProperty.name)
-                        .returns(nextProperty != null ? ClassName.get("", "$" + nextProperty.name) :
-                                dataClassInfo.metaClassName());
-                if (nextProperty != null) {
-                    setter.addStatement("return new " + "$$" + nextProperty.name + "(bean)");
-                } else {
-                    setter
-                            .addStatement("bean.$$init()")
-                            .addStatement("return bean");
-                }
-                stagingSetterWrapper.addMethod(setter.build());
+                        .addMethod(MethodSpec
+                                .methodBuilder(initProperty.name)
+                                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                                .addParameter(ParameterSpec.builder(typeName, initProperty.name)
+                                        .addAnnotations(valueAnnotations(initProperty)).build())
+                                .returns(nextProperty != null ? ClassName.get("", "$" + nextProperty.name) :
+                                        dataClassInfo.metaClassName())
+                                .build());
 
-                metadataClass.addType(stagingSetterWrapper.build());
+                metadataClass.addType(stagingSetterInterface.build());
             }
         }
 
         final MethodSpec initMethod = initMethodBuilder
-                .addStatement("return new $T" + initProperties.stream()
-                                .map(it -> it.name)
-                                .collect(Collectors.joining(",", "(", ")")),
+                .addStatement((dataClassInfo.intern ? "return intern(new $T" : "return new $T") +
+                                initProperties.stream()
+                                        .map(it -> it.name)
+                                        .collect(Collectors.joining(",", "(", ")")) +
+                                (dataClassInfo.intern ? ")" : ""),
                         dataClassInfo.beanClassName())
                 .build();
 
         metadataClass.addMethod(initMethod);
+
+        generateFrom(metadataClass, dataClassInfo);
+        metadataClass.addMethod(MethodSpec.methodBuilder("cast")
+                .addJavadoc("The value itself if it is a $T, otherwise it's read-only view\n", dataClassInfo.metaClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(dataClassInfo.className(), "value")
+                .addStatement("return value == null || value instanceof $T ? ($T) value : new $T(value)",
+                        dataClassInfo.metaClassName(), dataClassInfo.metaClassName(), dataClassInfo.viewClassName())
+                .build());
+        metadataClass.addMethod(MethodSpec.methodBuilder("view")
+                .addJavadoc("Read-only view of the value without copying: reads are delegated to the value, " +
+                        "nested values are viewed on access\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(dataClassInfo.className(), "value")
+                .addStatement("return value == null || value instanceof $T ? ($T) value : new $T(value)",
+                        dataClassInfo.viewClassName(), dataClassInfo.metaClassName(), dataClassInfo.viewClassName())
+                .build());
+
+        if (isImmutable(dataClassInfo, new ArrayList<>())) {
+            metadataClass.addMethod(MethodSpec.methodBuilder("intern")
+                    .addJavadoc("Canonical instance equal to the value, equal values interned share one instance\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(dataClassInfo.metaClassName())
+                    .addParameter(dataClassInfo.metaClassName(), "value")
+                    // views are not interned: the interner keeps the given instance that may change with it's source
+                    .beginControlFlow("if (!(value instanceof $T))", dataClassInfo.beanClassName())
+                    .addStatement("throw new $T($S + value.getClass().getName())", IllegalArgumentException.class,
+                            "Can not intern ")
+                    .endControlFlow()
+                    .addStatement("return $T.$N.intern(value)", dataClassInfo.beanClassName(), "$INTERNER")
+                    .build());
+        } else if (dataClassInfo.intern) {
+            throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                    "' can be interned only if all it's properties are read-only and nested data classes are immutable");
+        }
     }
 
 
@@ -594,7 +1737,7 @@ public class BeanGenerator {
             else
                 codeBlock.addStatement("return super.$N()", property.type, property.getterName());
         } else {
-            codeBlock.addStatement("return this.$N", property.name);
+            codeBlock.addStatement("return $L", fieldGet(dataClassInfo, "this", property.name));
         }
         return codeBlock.build();
     }
@@ -611,19 +1754,290 @@ public class BeanGenerator {
             else {
                 if (property.notNullAnnotation != null)
                     builder.add(genCheckNotNull(dataClassInfo, property.name));
-                builder.addStatement("super.$N($N)", property.setterName(), property.name);
+                final CodeBlock superWrite = CodeBlock.builder()
+                        .addStatement("super.$N($N)", property.setterName(), property.name)
+                        .build();
+                // superclass setter notifies the indexes only if the property is indexed there
+                builder.add(property.isIndexed && !propertyInfo.beanSuperclassProperty.isIndexed ?
+                        genIndexNotification(dataClassInfo, property, superWrite) : superWrite);
             }
 
         } else {
             if (property.notNullAnnotation != null)
                 builder.add(genCheckNotNull(dataClassInfo, property.name));
-            builder.addStatement("this.$N = $N", property.name, property.name);
+            if (property.isIndexed) {
+                builder.add(genIndexNotification(dataClassInfo, property,
+                        fieldWrite(dataClassInfo, "this", property.name, CodeBlock.of("$N", property.name))));
+            } else {
+                builder.add(fieldWrite(dataClassInfo, "this", property.name, CodeBlock.of("$N", property.name)));
+            }
         }
         return builder.build();
     }
 
 
-    private static CodeBlock genCheckNotNull(DataClassInfo dataClassInfo, String name) {
+    /**
+     * Wraps the field write of the indexed property with the notification of the indexes the bean is registered in
+     */
+    private CodeBlock genIndexNotification(DataClassInfo dataClassInfo, DataClassInfo.Property property,
+                                           CodeBlock write)
+    {
+        final List<String> propertyNames = beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .map(it -> it.property.name)
+                .collect(Collectors.toList());
+        return CodeBlock.builder()
+                .addStatement("final $T $$old = $L", IndexGenerator.KeyKind.of(property).typeName, fieldRead(dataClassInfo, "this", property.name))
+                .add(write)
+                .beginControlFlow("if (this.$$indexes != null)")
+                .beginControlFlow("for ($T index : this.$$indexes)", IndexListener.class)
+                .addStatement("index.changed(this, $L, $$old, $L)", propertyNames.indexOf(property.name),
+                        fieldRead(dataClassInfo, "this", property.name))
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+
+    boolean hasIndexedProperties(DataClassInfo dataClassInfo) {
+        return beanPropertyResolver.beanProperties(dataClassInfo).stream().anyMatch(it -> it.property.isIndexed);
+    }
+
+
+    /**
+     * Indexes the bean is registered in are kept by the topmost bean of the hierarchy having indexed properties
+     */
+    private static void generateIndexRegistration(TypeSpec.Builder beanClass) {
+        final ArrayTypeName indexesType = ArrayTypeName.of(IndexListener.class);
+        beanClass.addField(FieldSpec.builder(indexesType, "$indexes", Modifier.PROTECTED, Modifier.TRANSIENT)
+                .build());
+        beanClass.addMethod(MethodSpec.methodBuilder("$addIndex")
+                .addJavadoc("Registers the index notified on the indexed property changes, " +
+                        "returns false if it is already registered\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(IndexListener.class, "index")
+                .beginControlFlow("if (this.$$indexes == null)")
+                .addStatement("this.$$indexes = new $T[] {index}", IndexListener.class)
+                .addStatement("return true")
+                .endControlFlow()
+                .beginControlFlow("for ($T it : this.$$indexes)", IndexListener.class)
+                .addStatement("if (it == index) return false")
+                .endControlFlow()
+                .addStatement("this.$$indexes = $T.copyOf(this.$$indexes, this.$$indexes.length + 1)", Arrays.class)
+                .addStatement("this.$$indexes[this.$$indexes.length - 1] = index")
+                .addStatement("return true")
+                .build());
+        beanClass.addMethod(MethodSpec.methodBuilder("$removeIndex")
+                .addJavadoc("Unregisters the index, returns false if it was not registered\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(IndexListener.class, "index")
+                .beginControlFlow("for (int i = 0; this.$$indexes != null && i < this.$$indexes.length; i++)")
+                .beginControlFlow("if (this.$$indexes[i] == index)")
+                .beginControlFlow("if (this.$$indexes.length == 1)")
+                .addStatement("this.$$indexes = null")
+                .nextControlFlow("else")
+                .addStatement("final $T indexes = new $T[this.$$indexes.length - 1]", indexesType, IndexListener.class)
+                .addStatement("System.arraycopy(this.$$indexes, 0, indexes, 0, i)")
+                .addStatement("System.arraycopy(this.$$indexes, i + 1, indexes, i, indexes.length - i)")
+                .addStatement("this.$$indexes = indexes")
+                .endControlFlow()
+                .addStatement("return true")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return false")
+                .build());
+    }
+
+
+    /**
+     * Non-abstract data class with all properties read-only and immutable nested data classes
+     */
+    boolean isImmutable(DataClassInfo dataClassInfo, List<DataClassInfo> visited) {
+        if (dataClassInfo.isAbstract)
+            return false;
+        if (visited.contains(dataClassInfo))
+            return true;
+        visited.add(dataClassInfo);
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (!property.isReadOnly)
+                return false;
+            final DataClassInfo nestedClass = property.isDataClass ? resolveDataClass(property.type) : null;
+            if (nestedClass != null && !isImmutable(nestedClass, visited))
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Data class tracks changes if it or one of it's bean superclasses is declared with trackChanges
+     */
+    boolean tracksChanges(DataClassInfo dataClassInfo) {
+        final DataClassInfo beanSuperClass = beanSuperClass(dataClassInfo);
+        return dataClassInfo.trackChanges || beanSuperClass != null && tracksChanges(beanSuperClass);
+    }
+
+
+    /**
+     * Data class is concurrent if it or one of it's bean superclasses is declared with concurrent
+     */
+    boolean isConcurrent(DataClassInfo dataClassInfo) {
+        final DataClassInfo beanSuperClass = beanSuperClass(dataClassInfo);
+        return dataClassInfo.concurrent || beanSuperClass != null && isConcurrent(beanSuperClass);
+    }
+
+
+    /**
+     * Data class is freezable if it or one of it's bean superclasses is declared with freezable
+     */
+    boolean isFreezable(DataClassInfo dataClassInfo) {
+        final DataClassInfo beanSuperClass = beanSuperClass(dataClassInfo);
+        return dataClassInfo.freezable || beanSuperClass != null && isFreezable(beanSuperClass);
+    }
+
+
+    /**
+     * Number of long words of the dirty mask declared by the topmost tracking bean, 0 if the mask is a single long
+     */
+    private int dirtyMaskWords(DataClassInfo dataClassInfo) {
+        final DataClassInfo beanSuperClass = beanSuperClass(dataClassInfo);
+        if (beanSuperClass != null && tracksChanges(beanSuperClass))
+            return dirtyMaskWords(beanSuperClass);
+        final int size = beanPropertyResolver.beanProperties(dataClassInfo).size();
+        return size > Long.SIZE ? (size + Long.SIZE - 1) / Long.SIZE : 0;
+    }
+
+
+    private CodeBlock genMarkDirty(DataClassInfo dataClassInfo, BeanPropertyInfo propertyInfo) {
+        // the setter of the bean superclass marks the properties it declares
+        if (!tracksChanges(dataClassInfo) || propertyInfo.beanSuperclassProperty != null)
+            return CodeBlock.builder().build();
+        final int index = propertyIndex(dataClassInfo, propertyInfo.property.name);
+        if (dirtyMaskWords(dataClassInfo) == 0)
+            return CodeBlock.of("this.$$dirty |= 1L << $L;\n", index);
+        else
+            return CodeBlock.of("this.$$dirty[$L] |= 1L << $L;\n", index / Long.SIZE, index % Long.SIZE);
+    }
+
+
+    private CodeBlock genCheckNotFrozen(DataClassInfo dataClassInfo, BeanPropertyInfo propertyInfo) {
+        // the setter of the bean superclass checks the properties it declares
+        if (!isFreezable(dataClassInfo) || propertyInfo.beanSuperclassProperty != null)
+            return CodeBlock.builder().build();
+        return CodeBlock.builder()
+                .beginControlFlow("if (this.$$frozen)")
+                .addStatement("throw new $T($S)", UnsupportedOperationException.class, "Frozen bean")
+                .endControlFlow()
+                .build();
+    }
+
+
+    private CodeBlock genDirtyTest(DataClassInfo dataClassInfo, int index) {
+        if (dirtyMaskWords(dataClassInfo) == 0)
+            return CodeBlock.of("(this.$$dirty & 1L << $L) != 0", index);
+        else
+            return CodeBlock.of("(this.$$dirty[$L] & 1L << $L) != 0", index / Long.SIZE, index % Long.SIZE);
+    }
+
+
+    private int propertyIndex(DataClassInfo dataClassInfo, String name) {
+        final List<BeanPropertyInfo> properties = beanPropertyResolver.beanProperties(dataClassInfo);
+        for (int i = 0; i < properties.size(); i++) {
+            if (properties.get(i).property.name.equals(name))
+                return i;
+        }
+        throw new IllegalStateException(name);
+    }
+
+
+    /**
+     * The dirty mask is declared by the topmost tracking bean of the hierarchy, every tracking bean generates
+     * $copyDirtyTo() for it's own properties and chains to the bean superclass for the inherited ones
+     */
+    private void generateChangeTracking(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                        @Nullable DataClassInfo beanSuperClass, List<BeanPropertyInfo> properties)
+    {
+        final boolean isRoot = beanSuperClass == null || !tracksChanges(beanSuperClass);
+        if (isRoot && beanSuperClass != null)
+            throw new RuntimeException("trackChanges of " + dataClassInfo.className() +
+                    " requires trackChanges of the bean superclass " + beanSuperClass.className());
+        final int words = dirtyMaskWords(dataClassInfo);
+        if (properties.size() > Math.max(words, 1) * Long.SIZE)
+            throw new RuntimeException("Dirty mask of the bean superclass can not track all properties of " +
+                    dataClassInfo.className());
+
+        DataClassInfo root = dataClassInfo;
+        while (beanSuperClass(root) != null && tracksChanges(beanSuperClass(root)))
+            root = beanSuperClass(root);
+
+        if (isRoot) {
+            if (words == 0) {
+                beanClass.addField(TypeName.LONG, "$dirty", Modifier.PROTECTED);
+                beanClass.addMethod(MethodSpec.methodBuilder("$dirtyMask")
+                        .addJavadoc("Bit mask of the properties changed by setters by the property index\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.LONG)
+                        .addStatement("return this.$$dirty")
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("$clearDirty")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("this.$$dirty = 0")
+                        .build());
+            } else {
+                beanClass.addField(FieldSpec.builder(long[].class, "$dirty", Modifier.PROTECTED, Modifier.FINAL)
+                        .initializer("new long[$L]", words)
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("$dirtyMask")
+                        .addJavadoc("Bit mask of the properties changed by setters by the property index, " +
+                                "64 properties per element\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long[].class)
+                        .addStatement("return this.$$dirty.clone()")
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("$clearDirty")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("$T.fill(this.$$dirty, 0L)", Arrays.class)
+                        .build());
+            }
+        }
+
+        final MethodSpec.Builder copyDirtyTo = MethodSpec.methodBuilder("$copyDirtyTo")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(root.metaClassName(), "target");
+        final CodeBlock.Builder copyOwn = CodeBlock.builder();
+        for (int i = 0; i < properties.size(); i++) {
+            final BeanPropertyInfo propertyInfo = properties.get(i);
+            final DataClassInfo.Property property = propertyInfo.property;
+            // read-only properties are changed by copying only, inherited ones are copied by the bean superclass
+            if (property.isReadOnly || property.isComputed || property.isFixed ||
+                    !isRoot && propertyInfo.beanSuperclassProperty != null)
+                continue;
+            copyOwn.beginControlFlow("if ($L)", genDirtyTest(dataClassInfo, i))
+                    .addStatement("$N.$N(this.$N())", isRoot ? "target" : "to", property.writeAccessorName(),
+                            property.readAccessorName())
+                    .endControlFlow();
+        }
+        if (isRoot) {
+            copyDirtyTo.addJavadoc("Sets the changed properties of this bean to the target by it's setters\n")
+                    .addCode(copyOwn.build());
+        } else {
+            // the target may be a bean of the superclass that has the inherited properties only
+            copyDirtyTo.addAnnotation(Override.class)
+                    .addStatement("super.$$copyDirtyTo(target)");
+            if (!copyOwn.build().isEmpty())
+                copyDirtyTo.beginControlFlow("if (target instanceof $T)", dataClassInfo.metaClassName())
+                        .addStatement("final $T to = ($T) target", dataClassInfo.metaClassName(),
+                                dataClassInfo.metaClassName())
+                        .addCode(copyOwn.build())
+                        .endControlFlow();
+        }
+        beanClass.addMethod(copyDirtyTo.build());
+    }
+
+
+    static CodeBlock genCheckNotNull(DataClassInfo dataClassInfo, String name) {
         return CodeBlock.builder()
                 .addStatement("java.util.Objects.requireNonNull($N, \"$T.$N\")", name, dataClassInfo.className(), name)
                 .build();
@@ -633,7 +2047,7 @@ public class BeanGenerator {
         return Character.toUpperCase(name.charAt(0)) + name.substring(1);
     }
 
-    private DataClassInfo resolveDataClass(TypeMirror typeMirror) {
+    DataClassInfo resolveDataClass(TypeMirror typeMirror) {
         final TypeElement typeElement = procEnv.getElementUtils().getTypeElement(typeMirror.toString());
 
         if (typeElement.getAnnotation(DataClass.class) != null) {
@@ -642,4 +2056,337 @@ public class BeanGenerator {
 
         return null;
     }
+
+
+    /**
+     * Atomic field updaters of the mutable int, long and reference fields declared in this bean and the methods
+     * updating the fields by them, the methods of freezable beans check the frozen flag like the setters do
+     */
+    private void generateAtomicAccessors(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                         @Nullable DataClassInfo beanSuperClass, List<BeanPropertyInfo> properties)
+    {
+        if (beanSuperClass != null && !isConcurrent(beanSuperClass))
+            throw new RuntimeException("concurrent of " + dataClassInfo.className() +
+                    " requires concurrent of the bean superclass " + beanSuperClass.className());
+        if (dataClassInfo.compactLayout || tracksChanges(dataClassInfo) || hasIndexedProperties(dataClassInfo) ||
+                properties.stream().anyMatch(it -> it.property.isLazy))
+            throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                    "' is concurrent and can not have compactLayout, trackChanges, lazy or indexed properties");
+
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        for (BeanPropertyInfo propertyInfo : properties) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (propertyInfo.beanSuperclassProperty != null || property.isComputed || property.isReadOnly)
+                continue;
+            final TypeKind kind = property.storageKind();
+            final TypeName typeName = property.isUnboxed ? property.storageTypeName() : propertyTypeName(property);
+            final String updaterName = "$" + property.name + "Updater";
+            final String capitalized = capitalize(property.name);
+
+            if (kind == TypeKind.INT || kind == TypeKind.LONG) {
+                final boolean isInt = kind == TypeKind.INT;
+                final Class<?> updaterClass = isInt ? AtomicIntegerFieldUpdater.class : AtomicLongFieldUpdater.class;
+                beanClass.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(updaterClass), beanClassName),
+                        updaterName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.newUpdater($T.class, $S)", updaterClass, beanClassName, property.name)
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("compareAndSet" + capitalized)
+                        .addJavadoc("Sets the value if the current value is equal to the expected one\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.BOOLEAN)
+                        .addParameter(typeName, "expect")
+                        .addParameter(typeName, property.name)
+                        .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
+                        .addStatement("return $N.compareAndSet(this, expect, $N)", updaterName, property.name)
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("update" + capitalized)
+                        .addJavadoc("Atomically replaces the value by the result of the operator, returns the new value\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(typeName)
+                        .addParameter(isInt ? IntUnaryOperator.class : LongUnaryOperator.class, "operator")
+                        .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
+                        .addStatement("return $N.updateAndGet(this, operator)", updaterName)
+                        .build());
+                beanClass.addMethod(MethodSpec.methodBuilder("getAndAdd" + capitalized)
+                        .addJavadoc("Atomically adds the delta, returns the previous value\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(typeName)
+                        .addParameter(typeName, "delta")
+                        .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
+                        .addStatement("return $N.getAndAdd(this, delta)", updaterName)
+                        .build());
+
+            } else if (kind == TypeKind.DECLARED) {
+                final Class<?> updaterClass = AtomicReferenceFieldUpdater.class;
+                beanClass.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(updaterClass),
+                        beanClassName, typeName), updaterName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.newUpdater($T.class, $T.class, $S)", updaterClass, beanClassName,
+                                typeName, property.name)
+                        .build());
+                // boxed values are compared by identity, so they are only updated by the operator
+                if (!typeName.isBoxedPrimitive()) {
+                    beanClass.addMethod(MethodSpec.methodBuilder("compareAndSet" + capitalized)
+                            .addJavadoc("Sets the value if the current value is the expected instance\n")
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(TypeName.BOOLEAN)
+                            .addParameter(typeName, "expect")
+                            .addParameter(ParameterSpec.builder(typeName, property.name)
+                                    .addAnnotations(valueAnnotations(property))
+                                    .build())
+                            .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
+                            .addCode(property.notNullAnnotation != null ?
+                                    genCheckNotNull(dataClassInfo, property.name) : CodeBlock.builder().build())
+                            .addStatement("return $N.compareAndSet(this, expect, $N)", updaterName, property.name)
+                            .build());
+                }
+                beanClass.addMethod(MethodSpec.methodBuilder("update" + capitalized)
+                        .addJavadoc("Atomically replaces the value by the result of the operator, returns the new value\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(typeName)
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(UnaryOperator.class), typeName), "operator")
+                        .addCode(genCheckNotFrozen(dataClassInfo, propertyInfo))
+                        .beginControlFlow("for (;;)")
+                        .addStatement("final $T prev = this.$N", typeName, property.name)
+                        .addStatement("final $T $N = operator.apply(prev)", typeName, property.name)
+                        .addCode(property.notNullAnnotation != null ?
+                                genCheckNotNull(dataClassInfo, property.name) : CodeBlock.builder().build())
+                        .addStatement("if ($N.compareAndSet(this, prev, $N)) return $N", updaterName,
+                                property.name, property.name)
+                        .endControlFlow()
+                        .build());
+            }
+        }
+    }
+
+
+    /**
+     * The frozen flag is declared by the topmost freezable bean of the hierarchy, every freezable bean freezes the
+     * nested values of the properties it declares in $freezeValues()
+     */
+    private void generateFreezing(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                  @Nullable DataClassInfo beanSuperClass)
+    {
+        final boolean isRoot = beanSuperClass == null || !isFreezable(beanSuperClass);
+        if (isRoot && beanSuperClass != null)
+            throw new RuntimeException("freezable of " + dataClassInfo.className() +
+                    " requires freezable of the bean superclass " + beanSuperClass.className());
+
+        final MethodSpec.Builder $freezeValues = MethodSpec.methodBuilder("$freezeValues")
+                .addModifiers(Modifier.PROTECTED);
+        if (!isRoot)
+            $freezeValues.addStatement("super.$$freezeValues()");
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (propertyInfo.beanSuperclassProperty != null || property.isComputed || property.isFixed)
+                continue;
+            final DataClassInfo nestedClass = property.isDataClass ? resolveDataClass(property.type) : null;
+            if (nestedClass != null && isFreezable(nestedClass)) {
+                // views, records and cursors are replaced by frozen bean copies
+                final CodeBlock frozen = nestedClass.isAbstract ? CodeBlock.of("$N.freeze()", property.name) :
+                        CodeBlock.of("$N instanceof $T ? $N.freeze() : $T.from($N).freeze()", property.name,
+                                nestedClass.beanClassName(), property.name, nestedClass.metaClassName(),
+                                property.name);
+                $freezeValues.addStatement("final $T $N = $L", nestedClass.metaClassName(), property.name,
+                                fieldGet(dataClassInfo, "this", property.name))
+                        .beginControlFlow("if ($N != null)", property.name)
+                        .addCode(fieldWrite(dataClassInfo, "this", property.name, frozen))
+                        .endControlFlow();
+            } else if (nestedClass != null && !isImmutable(nestedClass, new ArrayList<>())) {
+                throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                        "' is freezable but it's property " + property.name + " is of mutable data class " +
+                        nestedClass.className());
+            } else if (property.isLazy) {
+                // frozen bean must not write the lazy default on the first read
+                $freezeValues.addStatement("$L", fieldGet(dataClassInfo, "this", property.name));
+            }
+        }
+        beanClass.addMethod($freezeValues.build());
+
+        if (isRoot) {
+            beanClass.addField(TypeName.BOOLEAN, "$frozen", Modifier.PROTECTED, Modifier.VOLATILE);
+            beanClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(dataClassInfo.metaClassName())
+                    .beginControlFlow("if (!this.$$frozen)")
+                    .addStatement("$$freezeValues()")
+                    // volatile write publishes the values written before it to the readers of the flag
+                    .addStatement("this.$$frozen = true")
+                    .endControlFlow()
+                    .addStatement("return this")
+                    .build());
+            beanClass.addMethod(MethodSpec.methodBuilder("isFrozen")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return this.$$frozen")
+                    .build());
+        } else {
+            beanClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(dataClassInfo.metaClassName())
+                    .addStatement("super.freeze()")
+                    .addStatement("return this")
+                    .build());
+        }
+    }
+
+
+    /**
+     * Deep copy of the bean copies the fields by the copy constructor and replaces the nested data class values of
+     * every bean class level by their deep copies in $deepCopyValues(), beans of immutable classes are not copied
+     */
+    private void generateDeepCopy(TypeSpec.Builder beanClass, DataClassInfo dataClassInfo,
+                                  @Nullable DataClassInfo beanSuperClass)
+    {
+        final MethodSpec.Builder $deepCopyValues = MethodSpec.methodBuilder("$deepCopyValues")
+                .addModifiers(Modifier.PROTECTED);
+        if (beanSuperClass != null)
+            $deepCopyValues.addStatement("super.$$deepCopyValues()");
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (propertyInfo.beanSuperclassProperty != null || property.isComputed)
+                continue;
+            final DataClassInfo nestedClass = property.isDataClass ? resolveDataClass(property.type) : null;
+            if (nestedClass == null || isImmutable(nestedClass, new ArrayList<>()))
+                continue;
+            // unset lazy field is null and stays unset in the copy
+            $deepCopyValues.beginControlFlow("if (this.$N != null)", property.name)
+                    .addStatement("this.$N = $L", property.name, genDeepCopy(nestedClass,
+                            CodeBlock.of("this.$N", property.name)))
+                    .endControlFlow();
+        }
+        beanClass.addMethod($deepCopyValues.build());
+
+        final MethodSpec.Builder deepCopy = MethodSpec.methodBuilder("deepCopy")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(dataClassInfo.metaClassName());
+        if (!dataClassInfo.isAbstract)
+            deepCopy.addAnnotation(Override.class);
+        if (isImmutable(dataClassInfo, new ArrayList<>())) {
+            deepCopy.addStatement("return this");
+        } else {
+            deepCopy.addStatement("final $T copy = new $T(this)", dataClassInfo.beanClassName(),
+                            dataClassInfo.beanClassName())
+                    .addStatement("copy.$$deepCopyValues()")
+                    .addStatement("return copy");
+        }
+        beanClass.addMethod(deepCopy.build());
+    }
+
+
+    /**
+     * Deep copy of the non-null value of the nested data class by the from() of it's meta interface
+     */
+    static CodeBlock genDeepCopy(DataClassInfo nestedClass, CodeBlock value) {
+        return CodeBlock.of("$T.from($L)", nestedClass.metaClassName(), value);
+    }
+
+
+    /**
+     * Concrete data classes extending the abstract data class, subclasses go before their superclasses
+     */
+    private List<DataClassInfo> concreteSubclasses(DataClassInfo dataClassInfo) {
+        return dataBeans.values().stream()
+                .filter(it -> !it.isAbstract &&
+                        procEnv.getTypeUtils().isSubtype(it.classType, dataClassInfo.classType))
+                .sorted(Comparator.comparingInt((DataClassInfo it) -> -ancestorCount(it))
+                        .thenComparing(it -> it.className().toString()))
+                .collect(Collectors.toList());
+    }
+
+
+    private static int ancestorCount(DataClassInfo dataClassInfo) {
+        final Set<DataClassInfo> ancestors = new HashSet<>();
+        final Deque<DataClassInfo> queue = new ArrayDeque<>(dataClassInfo.superClasses);
+        while (!queue.isEmpty()) {
+            final DataClassInfo ancestor = queue.pop();
+            if (ancestors.add(ancestor))
+                queue.addAll(ancestor.superClasses);
+        }
+        return ancestors.size();
+    }
+
+
+    /**
+     * from(value) and view(value) of abstract data classes: beans are copied by their deepCopy(), other values are
+     * copied or viewed by the most specific concrete data class they implement, values not implementing any concrete
+     * data class are rejected
+     */
+    private void generateAbstractInitializers(TypeSpec.Builder metadataClass, DataClassInfo dataClassInfo) {
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final MethodSpec.Builder from = MethodSpec.methodBuilder("from")
+                .addJavadoc("Deep copy of the value by it's concrete data class, nested values of immutable data " +
+                        "classes are shared\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(dataClassInfo.className(), "value")
+                .beginControlFlow("if (value == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("if (value instanceof $T)", beanClassName)
+                .addStatement("return (($T) value).deepCopy()", beanClassName)
+                .endControlFlow();
+        final MethodSpec.Builder view = MethodSpec.methodBuilder("view")
+                .addJavadoc("Read-only view of the value by it's concrete data class\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(dataClassInfo.className(), "value")
+                .beginControlFlow("if (value == null)")
+                .addStatement("return null")
+                .endControlFlow();
+        for (DataClassInfo subclass : concreteSubclasses(dataClassInfo)) {
+            from.beginControlFlow("if (value instanceof $T)", subclass.className())
+                    .addStatement("return $T.from(($T) value)", subclass.metaClassName(), subclass.className())
+                    .endControlFlow();
+            view.beginControlFlow("if (value instanceof $T)", subclass.className())
+                    .addStatement("return $T.view(($T) value)", subclass.metaClassName(), subclass.className())
+                    .endControlFlow();
+        }
+        from.addStatement("throw new $T($S + value.getClass().getName() + $S)", IllegalArgumentException.class,
+                "Can not copy ", " implementing no concrete data class of " + dataClassInfo.className());
+        view.addStatement("throw new $T($S + value.getClass().getName() + $S)", IllegalArgumentException.class,
+                "Can not view ", " implementing no concrete data class of " + dataClassInfo.className());
+        metadataClass.addMethod(from.build());
+        metadataClass.addMethod(view.build());
+    }
+
+
+    /**
+     * from(value) deep copies beans by their deepCopy(), other implementations are read through the accessors
+     */
+    private void generateFrom(TypeSpec.Builder metadataClass, DataClassInfo dataClassInfo) {
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final MethodSpec.Builder from = MethodSpec.methodBuilder("from")
+                .addJavadoc("Deep copy of the value, nested values of immutable data classes are shared\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(dataClassInfo.className(), "value")
+                .beginControlFlow("if (value == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("if (value instanceof $T)", beanClassName)
+                .addStatement("return (($T) value).deepCopy()", beanClassName)
+                .endControlFlow()
+                .addStatement("final $T copy = new $T()", beanClassName, beanClassName);
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (property.isComputed)
+                continue;
+            final DataClassInfo nestedClass = property.isDataClass ? resolveDataClass(property.type) : null;
+            if (nestedClass != null) {
+                final String local = "$" + property.name;
+                from.addStatement("final $T $N = value.$N()", nestedClass.className(), local,
+                                property.readAccessorName())
+                        .addCode(fieldWrite(dataClassInfo, "copy", property.name,
+                                CodeBlock.of("$N == null ? null : $L", local,
+                                        genDeepCopy(nestedClass, CodeBlock.of("$N", local)))));
+            } else {
+                from.addCode(fieldWrite(dataClassInfo, "copy", property.name,
+                        CodeBlock.of("value.$N()", property.readAccessorName())));
+            }
+        }
+        metadataClass.addMethod(from.addStatement("return copy").build());
+    }
 }
@@ -4,9 +4,11 @@ import databean.*;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.*;
+import javax.lang.model.type.MirroredTypesException;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,7 +55,7 @@ public class BeanMetadataResolver {
             }
         }
 
-        final List<DataClassInfo.Property> properties = resolveElementProperties(element);
+        final List<DataClassInfo.Property> properties = resolveElementProperties(element, dataClassAnno);
 
         for (Element enclosedElement : element.getEnclosedElements()) {
             if (enclosedElement instanceof ExecutableElement) {
@@ -77,15 +79,32 @@ public class BeanMetadataResolver {
 
         dataClassInfo = new DataClassInfo(enclosingClass, enclosingType, element.asType(), metaClassName,
                 dataClassAnno.isAbstract(), properties, generateBeanAccessors, dataClassAnno.inheritFromSuperclass(),
+                dataClassAnno.cacheHashCode(), dataClassAnno.compactLayout(),
+                dataClassAnno.trackChanges(), dataClassAnno.intern(),
+                dataClassAnno.concurrent(), dataClassAnno.freezable(), mappedWith(dataClassAnno),
                 customConstructors, superClasses);
         cache.put(element.getQualifiedName().toString(), dataClassInfo);
         return dataClassInfo;
     }
 
 
+    /**
+     * Class values of the annotation are not loaded by the compiler, only their type mirrors are available
+     */
+    private static List<TypeMirror> mappedWith(DataClass dataClassAnno) {
+        try {
+            dataClassAnno.mappedWith();
+            // only an empty array is returned without loading classes
+            return Collections.emptyList();
+        } catch (MirroredTypesException e) {
+            return new ArrayList<>(e.getTypeMirrors());
+        }
+    }
+
 
 
-    private List<DataClassInfo.Property> resolveElementProperties(Element element) {
+
+    private List<DataClassInfo.Property> resolveElementProperties(Element element, DataClass dataClassAnno) {
         final ArrayList<DataClassInfo.Property> properties = new ArrayList<>();
         final String className = element.getSimpleName().toString();
 
@@ -145,10 +164,19 @@ public class BeanMetadataResolver {
                 final TypeElement typeElement = procEnv.getElementUtils().getTypeElement(returnType.toString());
                 final boolean isDataClass = typeElement != null && typeElement.getAnnotation(DataClass.class) != null;
 
+                // explicitly annotated properties are validated, class-level option applies only where possible
+                final boolean unboxed = executableElement.getAnnotation(Unboxed.class) != null ||
+                        dataClassAnno.unboxed() && notNullAnnotation != null && isBoxedType(returnType);
+
+                final boolean lazy = executableElement.getAnnotation(Lazy.class) != null ||
+                        dataClassAnno.lazyDefaults() && !returnType.getKind().isPrimitive() && !unboxed &&
+                                (hasDefaultValue || !initial && !computed && notNullAnnotation != null);
+
                 try {
                     properties.add(new DataClassInfo.Property(propertyName, beanNameDeclaration, returnType, isDataClass, initial, readonly,
                             hasDefaultValue, defaultValueExpression.isEmpty() ? null : defaultValueExpression,
-                            computed, fixed, notNullAnnotation));
+                            computed, fixed, notNullAnnotation, unboxed,
+                            executableElement.getAnnotation(Indexed.class) != null, lazy));
                 } catch (IllegalArgumentException e) {
                     throw new RuntimeException("DataClass property definition error " + className + "." + propertyName + ": " + e.getMessage(), e);
                 }
@@ -158,6 +186,16 @@ public class BeanMetadataResolver {
     }
 
 
+    private boolean isBoxedType(TypeMirror type) {
+        try {
+            procEnv.getTypeUtils().unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
     private static String getPropertyNameFromDeclaration(String methodName, TypeMirror type) {
         if (type.getKind().isPrimitive() && "boolean".equals(type.toString())) {
             if (methodName.startsWith("is") && methodName.length() > 2 &&
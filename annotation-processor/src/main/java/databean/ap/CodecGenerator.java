@@ -0,0 +1,359 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.ByteBufferCodec;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a fixed-schema binary codec of the bean: UserCodec.write(buffer, user), UserCodec.read(buffer).
+ * <p>
+ * Fields are written per bean class level following the bean superclass chain like $fill() does.
+ * Each level starts with a bitmap that holds presence bits of nullable fields and values of boolean fields,
+ * followed by the values of other fields: primitives inline, strings in UTF-8, enums by ordinal
+ * and data classes recursively by their codecs.
+ * Values that are not beans (views, records, cursors, other implementations) are written through the accessors.
+ */
+public class CodecGenerator {
+    private static final int MAX_BITMAP_BITS = 64;
+
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public CodecGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                          Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeCodecClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder codecClass = TypeSpec
+                .classBuilder(dataClassInfo.codecClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateCodecClass(codecClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), codecClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateCodecClass(TypeSpec.Builder codecClass, DataClassInfo dataClassInfo) {
+        codecClass.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build());
+
+        final String unsupportedReason = unsupportedReason(dataClassInfo, new HashSet<>(), true);
+        if (unsupportedReason != null) {
+            procEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Codec of '" +
+                    dataClassInfo.className().simpleName() + "' is not generated: " + unsupportedReason);
+        } else {
+            generateCodecMethods(codecClass, dataClassInfo);
+        }
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedCodecClass = TypeSpec
+                            .classBuilder(it.codecClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateCodecClass(nestedCodecClass, it);
+                    codecClass.addType(nestedCodecClass.build());
+                });
+    }
+
+
+    private void generateCodecMethods(TypeSpec.Builder codecClass, DataClassInfo dataClassInfo) {
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final DataClassInfo beanSuperClass = BeanGenerator.beanSuperClass(dataClassInfo);
+
+        if (!dataClassInfo.isAbstract) {
+            codecClass.addMethod(MethodSpec.methodBuilder("write")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(dataClassInfo.metaClassName(), "value")
+                    .beginControlFlow("if (value.getClass() == $T.class)", beanClassName)
+                    .addStatement("writeFields(buffer, ($T) value)", beanClassName)
+                    .nextControlFlow("else if (value instanceof $T)", beanClassName)
+                    // bean of a data subclass can not be read back
+                    .addStatement("throw new $T($S + value.getClass().getName())", IllegalArgumentException.class,
+                            dataClassInfo.codecClassName().simpleName() + " can not write ")
+                    .nextControlFlow("else")
+                    .addStatement("writeValues(buffer, value)")
+                    .endControlFlow()
+                    .build());
+            codecClass.addMethod(MethodSpec.methodBuilder("read")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(dataClassInfo.metaClassName())
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addStatement("final $T bean = new $T()", beanClassName, beanClassName)
+                    .addStatement("readFields(buffer, bean)")
+                    .addStatement("return bean")
+                    .build());
+        }
+
+        final MethodSpec.Builder writeFields = MethodSpec.methodBuilder("writeFields")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addParameter(beanClassName, "bean");
+        final MethodSpec.Builder writeValues = MethodSpec.methodBuilder("writeValues")
+                .addJavadoc("Writes the values of any implementation read by the accessors in the layout of writeFields()\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addParameter(dataClassInfo.metaClassName(), "value");
+        final MethodSpec.Builder readFields = MethodSpec.methodBuilder("readFields")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addParameter(beanClassName, "bean");
+
+        if (beanSuperClass != null) {
+            writeFields.addStatement("$T.writeFields(buffer, bean)", beanSuperClass.codecClassName());
+            writeValues.addStatement("$T.writeValues(buffer, value)", beanSuperClass.codecClassName());
+            readFields.addStatement("$T.readFields(buffer, bean)", beanSuperClass.codecClassName());
+        }
+
+        final List<DataClassInfo.Property> fields = ownFields(dataClassInfo);
+
+        // bitmap layout: presence bit of a nullable field followed by value bit of a boolean field
+        final Map<String, Integer> presenceBits = new HashMap<>();
+        final Map<String, Integer> valueBits = new HashMap<>();
+        int bitCount = 0;
+        for (DataClassInfo.Property field : fields) {
+            if (isNullable(field))
+                presenceBits.put(field.name, bitCount++);
+            if (valueKind(field) == TypeKind.BOOLEAN)
+                valueBits.put(field.name, bitCount++);
+        }
+
+        final boolean isLong = bitCount > 32;
+        final Map<String, CodeBlock> fieldValues = new HashMap<>();
+        final Map<String, CodeBlock> accessorValues = new HashMap<>();
+        for (DataClassInfo.Property field : fields) {
+            fieldValues.put(field.name, beanGenerator.fieldRead(dataClassInfo, "bean", field.name));
+            // every accessor is called once
+            final String local = "value$" + field.name;
+            writeValues.addStatement("final $T $N = value.$N()", beanGenerator.propertyTypeName(field), local,
+                    field.readAccessorName());
+            accessorValues.put(field.name, CodeBlock.of("$N", local));
+        }
+        generateWrite(writeFields, fields, presenceBits, valueBits, bitCount, fieldValues);
+        generateWrite(writeValues, fields, presenceBits, valueBits, bitCount, accessorValues);
+
+        if (bitCount > 0) {
+            if (bitCount <= 8)
+                readFields.addStatement("final int flags = buffer.get()");
+            else if (bitCount <= 16)
+                readFields.addStatement("final int flags = buffer.getShort()");
+            else if (!isLong)
+                readFields.addStatement("final int flags = buffer.getInt()");
+            else
+                readFields.addStatement("final long flags = buffer.getLong()");
+        }
+
+        for (DataClassInfo.Property field : fields) {
+            final Integer presenceBit = presenceBits.get(field.name);
+            final Integer valueBit = valueBits.get(field.name);
+
+            final CodeBlock readValue;
+            if (valueBit != null)
+                readValue = CodeBlock.of("(flags & $L) != 0", maskLiteral(valueBit, isLong));
+            else
+                readValue = readValue(field);
+            if (presenceBit != null) {
+                // box explicitly, so the conditional expression is not unboxed
+                final CodeBlock nullableValue = field.typeName().isBoxedPrimitive() ?
+                        CodeBlock.of("$T.valueOf($L)", field.typeName(), readValue) : readValue;
+                readFields.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", field.name,
+                        CodeBlock.of("(flags & $L) != 0 ? $L : null", maskLiteral(presenceBit, isLong), nullableValue)));
+            } else {
+                readFields.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", field.name, readValue));
+            }
+        }
+
+        codecClass.addMethod(writeFields.build());
+        codecClass.addMethod(writeValues.build());
+        codecClass.addMethod(readFields.build());
+    }
+
+
+    /**
+     * Writes the bitmap and the values of the fields of one bean class level
+     * @param values expressions of the field values by the property name
+     */
+    private void generateWrite(MethodSpec.Builder write, List<DataClassInfo.Property> fields,
+                               Map<String, Integer> presenceBits, Map<String, Integer> valueBits, int bitCount,
+                               Map<String, CodeBlock> values)
+    {
+        final boolean isLong = bitCount > 32;
+        if (bitCount > 0) {
+            write.addStatement("$T flags = 0", isLong ? TypeName.LONG : TypeName.INT);
+            for (DataClassInfo.Property field : fields) {
+                final CodeBlock value = values.get(field.name);
+                final Integer presenceBit = presenceBits.get(field.name);
+                final Integer valueBit = valueBits.get(field.name);
+                if (presenceBit != null)
+                    write.addStatement("if ($L != null) flags |= $L", value, maskLiteral(presenceBit, isLong));
+                if (valueBit != null) {
+                    if (presenceBit != null)
+                        write.addStatement("if ($L != null && $L) flags |= $L", value, value,
+                                maskLiteral(valueBit, isLong));
+                    else
+                        write.addStatement("if ($L) flags |= $L", value, maskLiteral(valueBit, isLong));
+                }
+            }
+            if (bitCount <= 8)
+                write.addStatement("buffer.put((byte) flags)");
+            else if (bitCount <= 16)
+                write.addStatement("buffer.putShort((short) flags)");
+            else if (!isLong)
+                write.addStatement("buffer.putInt(flags)");
+            else
+                write.addStatement("buffer.putLong(flags)");
+        }
+
+        for (DataClassInfo.Property field : fields) {
+            final CodeBlock value = values.get(field.name);
+            if (valueBits.get(field.name) == null) {
+                if (presenceBits.get(field.name) != null)
+                    write.addStatement("if ($L != null) $L", value, writeValue(field, value));
+                else
+                    write.addStatement("$L", writeValue(field, value));
+            }
+        }
+    }
+
+
+    /**
+     * Properties stored in fields declared by this bean class
+     */
+    private List<DataClassInfo.Property> ownFields(DataClassInfo dataClassInfo) {
+        return beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .filter(it -> it.beanSuperclassProperty == null && !it.property.isComputed)
+                .map(it -> it.property)
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Reason why the codec can not be generated or null if all fields of the bean have supported types.
+     * Nested data class properties must be supported too.
+     * @param checkBitmap check that the bitmap of nullable and boolean fields fits the binary codec
+     */
+    @Nullable
+    String unsupportedReason(DataClassInfo dataClassInfo, Set<ClassName> visiting, boolean checkBitmap) {
+        if (!visiting.add(dataClassInfo.className()))
+            return null;
+        final DataClassInfo beanSuperClass = BeanGenerator.beanSuperClass(dataClassInfo);
+        if (beanSuperClass != null) {
+            final String reason = unsupportedReason(beanSuperClass, visiting, checkBitmap);
+            if (reason != null)
+                return reason;
+        }
+        final List<DataClassInfo.Property> fields = ownFields(dataClassInfo);
+        if (checkBitmap && fields.stream().mapToInt(it -> (isNullable(it) ? 1 : 0) + (valueKind(it) == TypeKind.BOOLEAN ? 1 : 0))
+                .sum() > MAX_BITMAP_BITS)
+            return "too many nullable or boolean properties";
+        for (DataClassInfo.Property field : fields) {
+            if (field.isDataClass) {
+                final DataClassInfo propertyClass = Objects.requireNonNull(beanGenerator.resolveDataClass(field.type));
+                if (propertyClass.isAbstract)
+                    return "property '" + field.name + "' is of abstract data class type";
+                final String reason = unsupportedReason(propertyClass, visiting, checkBitmap);
+                if (reason != null)
+                    return reason;
+            } else if (valueKind(field) == TypeKind.DECLARED && !isString(field) && !isEnum(field)) {
+                return "property '" + field.name + "' is of unsupported type " + field.type;
+            }
+        }
+        return null;
+    }
+
+
+    private CodeBlock writeValue(DataClassInfo.Property field, CodeBlock value) {
+        switch (valueKind(field)) {
+            case BYTE: return CodeBlock.of("buffer.put($L)", value);
+            case SHORT: return CodeBlock.of("buffer.putShort($L)", value);
+            case CHAR: return CodeBlock.of("buffer.putChar($L)", value);
+            case INT: return CodeBlock.of("buffer.putInt($L)", value);
+            case LONG: return CodeBlock.of("buffer.putLong($L)", value);
+            case FLOAT: return CodeBlock.of("buffer.putFloat($L)", value);
+            case DOUBLE: return CodeBlock.of("buffer.putDouble($L)", value);
+        }
+        if (field.isDataClass)
+            return CodeBlock.of("$T.write(buffer, $L)",
+                    Objects.requireNonNull(beanGenerator.resolveDataClass(field.type)).codecClassName(), value);
+        if (isEnum(field))
+            return CodeBlock.of("buffer.putInt($L.ordinal())", value);
+        return CodeBlock.of("$T.putString(buffer, $L)", ByteBufferCodec.class, value);
+    }
+
+
+    private CodeBlock readValue(DataClassInfo.Property field) {
+        switch (valueKind(field)) {
+            case BYTE: return CodeBlock.of("buffer.get()");
+            case SHORT: return CodeBlock.of("buffer.getShort()");
+            case CHAR: return CodeBlock.of("buffer.getChar()");
+            case INT: return CodeBlock.of("buffer.getInt()");
+            case LONG: return CodeBlock.of("buffer.getLong()");
+            case FLOAT: return CodeBlock.of("buffer.getFloat()");
+            case DOUBLE: return CodeBlock.of("buffer.getDouble()");
+        }
+        if (field.isDataClass)
+            return CodeBlock.of("$T.read(buffer)",
+                    Objects.requireNonNull(beanGenerator.resolveDataClass(field.type)).codecClassName());
+        if (isEnum(field))
+            return CodeBlock.of("$T.values()[buffer.getInt()]", field.typeName());
+        return CodeBlock.of("$T.getString(buffer)", ByteBufferCodec.class);
+    }
+
+
+    /**
+     * Primitive kind of the value (unboxed for boxed types) or DECLARED for reference types
+     */
+    TypeKind valueKind(DataClassInfo.Property field) {
+        if (field.type.getKind().isPrimitive() || field.isUnboxed)
+            return field.storageKind();
+        if (field.typeName().isBoxedPrimitive())
+            return procEnv.getTypeUtils().unboxedType(field.type).getKind();
+        return TypeKind.DECLARED;
+    }
+
+
+    static boolean isNullable(DataClassInfo.Property field) {
+        return !field.type.getKind().isPrimitive() && !field.isUnboxed && field.notNullAnnotation == null;
+    }
+
+
+    static boolean isString(DataClassInfo.Property field) {
+        return "java.lang.String".equals(field.type.toString());
+    }
+
+
+    boolean isEnum(DataClassInfo.Property field) {
+        final Element element = procEnv.getTypeUtils().asElement(field.type);
+        return element != null && element.getKind() == ElementKind.ENUM;
+    }
+
+
+    private static String maskLiteral(int bit, boolean isLong) {
+        return isLong ? "0x" + Long.toHexString(1L << bit) + "L" : "0x" + Integer.toHexString(1 << bit);
+    }
+}
@@ -0,0 +1,397 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.Columns;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates struct-of-arrays container of the beans with one array per stored property:
+ * <pre>
+ *     UserColumns users = new UserColumns();
+ *     users.add(user);
+ *     int[] ages = users.ages();
+ *     User first = users.get(0);
+ * </pre>
+ * Element i of the container is accessed through a reusable cursor implementing the meta interface, bulk column
+ * accessors return the backing arrays which are valid up to size(). The container implements {@link Columns},
+ * so it is scanned in parallel by users.query().
+ */
+public class ColumnsGenerator {
+    private static final int DEFAULT_CAPACITY = 16;
+    /* names of the container members that can not be used by column accessors */
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList(
+            "size", "add", "get", "cursor", "ensureCapacity", "column", "query", "equals", "hashCode", "toString", "getClass",
+            "notify", "notifyAll", "wait", "clone", "finalize"));
+
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public ColumnsGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                            Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeColumnsClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder columnsClass = TypeSpec
+                .classBuilder(dataClassInfo.columnsClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateColumnsClass(columnsClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), columnsClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateColumnsClass(TypeSpec.Builder columnsClass, DataClassInfo dataClassInfo) {
+        if (dataClassInfo.isAbstract) {
+            // holder of the nested data classes only
+            columnsClass.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PRIVATE)
+                    .build());
+        } else {
+            generateColumns(columnsClass, dataClassInfo);
+        }
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedColumnsClass = TypeSpec
+                            .classBuilder(it.columnsClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateColumnsClass(nestedColumnsClass, it);
+                    columnsClass.addType(nestedColumnsClass.build());
+                });
+    }
+
+
+    private void generateColumns(TypeSpec.Builder columnsClass, DataClassInfo dataClassInfo) {
+        final ClassName columnsClassName = dataClassInfo.columnsClassName();
+        final ClassName cursorClassName = columnsClassName.nestedClass("Cursor");
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final List<DataClassInfo.Property> beanProperties = beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .map(it -> it.property)
+                .collect(Collectors.toList());
+        final List<DataClassInfo.Property> properties = beanProperties.stream()
+                .filter(it -> !it.isComputed)
+                .collect(Collectors.toList());
+        final Map<String, String> accessorNames = columnAccessorNames(properties);
+
+        columnsClass.addSuperinterface(ParameterizedTypeName.get(ClassName.get(Columns.class), metaClassName));
+
+        columnsClass.addField(FieldSpec.builder(TypeName.INT, "size", Modifier.PRIVATE).build());
+        columnsClass.addField(FieldSpec.builder(cursorClassName, "cursor", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T()", cursorClassName)
+                .build());
+
+        final MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "capacity");
+        // capacity is the length of the column arrays
+        final String capacityColumn = properties.isEmpty() ? null : column(properties.get(0));
+        final MethodSpec.Builder ensureCapacity = MethodSpec.methodBuilder("ensureCapacity")
+                .addJavadoc("Grows the columns to hold at least the given number of elements\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "capacity");
+        if (capacityColumn != null) {
+            ensureCapacity.beginControlFlow("if (capacity <= this.$N.length)", capacityColumn)
+                    .addStatement("return")
+                    .endControlFlow()
+                    .addStatement("final int length = $T.max(capacity, this.$N.length * 2)", Math.class,
+                            capacityColumn);
+        }
+        final MethodSpec.Builder add = MethodSpec.methodBuilder("add")
+                .addJavadoc("Appends the values of the bean properties and returns it's index\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addParameter(metaClassName, "value")
+                .addStatement("final int index = this.size")
+                .addStatement("ensureCapacity(index + 1)");
+        final boolean hasLazyFields = properties.stream()
+                .anyMatch(it -> beanGenerator.isLazyField(dataClassInfo, it.name));
+        if (hasLazyFields)
+            // the getters would set the lazy defaults in the added bean
+            add.addStatement("final $T bean = value instanceof $T ? ($T) value : null", beanClassName, beanClassName,
+                    beanClassName);
+        final TypeSpec.Builder cursorClass = TypeSpec.classBuilder(cursorClassName)
+                .addJavadoc("Flyweight view of the element at the cursor index\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addSuperinterface(metaClassName)
+                .addField(TypeName.INT, "$index", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("at")
+                        .addJavadoc("Moves the cursor to the element\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(cursorClassName)
+                        .addParameter(TypeName.INT, "index")
+                        .addStatement("this.$$index = $T.this.checkIndex(index)", columnsClassName)
+                        .addStatement("return this")
+                        .build());
+        final MethodSpec.Builder toBean = MethodSpec.methodBuilder("toBean")
+                .addJavadoc("Copies the element to a new bean\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName)
+                .addStatement("final $T bean = new $T()", beanClassName, beanClassName);
+
+        boolean uncheckedColumns = false;
+        for (DataClassInfo.Property property : properties) {
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final TypeName elementType = elementType(property);
+            final String column = column(property);
+            final CodeBlock value = CodeBlock.of("$T.this.$N[this.$$index]", columnsClassName, column);
+            // generic arrays are created with the raw element type
+            final boolean unchecked = typeName instanceof ParameterizedTypeName;
+            uncheckedColumns |= unchecked;
+
+            columnsClass.addField(FieldSpec.builder(ArrayTypeName.of(elementType), column, Modifier.PRIVATE)
+                    .build());
+            constructor.addStatement("this.$N = new $T[capacity]", column, elementType);
+            ensureCapacity.addStatement("this.$N = $T.copyOf(this.$N, length)", column, Arrays.class, column);
+            final CodeBlock read = CodeBlock.of("value.$N()", property.isUnboxed ?
+                    BeanGenerator.unboxedAccessorName(property) : property.readAccessorName());
+            if (beanGenerator.isLazyField(dataClassInfo, property.name))
+                add.addStatement("this.$N[index] = bean != null ? $L : $L", column,
+                        beanGenerator.fieldRead(dataClassInfo, "bean", property.name), read);
+            else
+                add.addStatement("this.$N[index] = $L", column, read);
+
+            columnsClass.addMethod(MethodSpec.methodBuilder(accessorNames.get(property.name))
+                    .addJavadoc("Backing array of $N values, elements from size() on are unused\n", property.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(ArrayTypeName.of(elementType))
+                    .addStatement("return this.$N", column)
+                    .build());
+
+            final MethodSpec.Builder getter = MethodSpec.methodBuilder(property.readAccessorName())
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(typeName);
+            if (unchecked) {
+                getter.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
+                        .addStatement("return ($T) $L", typeName, value);
+            } else {
+                getter.addStatement("return $L", value);
+            }
+            cursorClass.addMethod(getter.build());
+            toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                    unchecked ? CodeBlock.of("($T) $L", typeName, value) : value));
+        }
+        generateCursorModifiers(cursorClass, dataClassInfo, properties);
+        if (uncheckedColumns) {
+            toBean.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                    .addMember("value", "$S", "unchecked")
+                    .build());
+        }
+
+        columnsClass.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this($L)", DEFAULT_CAPACITY)
+                .build());
+        columnsClass.addMethod(constructor.build());
+        columnsClass.addMethod(MethodSpec.methodBuilder("size")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return this.size")
+                .build());
+        columnsClass.addMethod(add
+                .addStatement("this.size = index + 1")
+                .addStatement("return index")
+                .build());
+        columnsClass.addMethod(MethodSpec.methodBuilder("get")
+                .addJavadoc("Moves the shared cursor of the container to the element and returns it\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(cursorClassName)
+                .addParameter(TypeName.INT, "index")
+                .addStatement("return this.cursor.at(index)")
+                .build());
+        columnsClass.addMethod(MethodSpec.methodBuilder("cursor")
+                .addJavadoc("Creates a new cursor independent of the shared one\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(cursorClassName)
+                .addStatement("return new $T()", cursorClassName)
+                .build());
+        columnsClass.addMethod(ensureCapacity.build());
+
+        // column lookup by the property index of XxxMeta
+        final MethodSpec.Builder column = MethodSpec.methodBuilder("column")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("switch (index)");
+        for (int i = 0; i < beanProperties.size(); i++) {
+            final DataClassInfo.Property property = beanProperties.get(i);
+            if (!property.isComputed)
+                column.addStatement("case $L: return this.$N", i, column(property));
+        }
+        columnsClass.addMethod(column
+                .addStatement("default: throw new $T($S + index)", IllegalArgumentException.class,
+                        "Property is not stored in a column: ")
+                .endControlFlow()
+                .build());
+        columnsClass.addMethod(MethodSpec.methodBuilder("checkIndex")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(TypeName.INT)
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("if (index < 0 || index >= this.size)")
+                .addStatement("throw new $T($S + index + $S + this.size)", IndexOutOfBoundsException.class,
+                        "Index: ", ", size: ")
+                .endControlFlow()
+                .addStatement("return index")
+                .build());
+
+        cursorClass.addMethod(toBean.addStatement("return bean").build());
+        cursorClass.addMethod(MethodSpec.methodBuilder("with")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName.nestedClass("With"))
+                .addStatement("return this.toBean().with()")
+                .build());
+        if (beanGenerator.isFreezable(dataClassInfo)) {
+            cursorClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(metaClassName)
+                    // freezing a copy would leave this value modifiable
+                    .addStatement("throw new $T($S)", UnsupportedOperationException.class,
+                            "Only beans can be frozen")
+                    .build());
+            cursorClass.addMethod(MethodSpec.methodBuilder("isFrozen")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return false")
+                    .build());
+        }
+        // value semantics of the bean without copying
+        beanGenerator.generateValueObjectMethods(cursorClass, dataClassInfo);
+        columnsClass.addType(cursorClass.build());
+    }
+
+
+    /**
+     * Implements write accessors, copy-setters and unboxed accessors declared by the meta interfaces of the class
+     * and it's superclasses. Only write accessors of the mutable properties modify the columns, the others are
+     * delegated to a bean copy to follow the bean semantics.
+     */
+    private void generateCursorModifiers(TypeSpec.Builder cursorClass, DataClassInfo dataClassInfo,
+                                         List<DataClassInfo.Property> properties)
+    {
+        final Map<String, DataClassInfo.Property> storedProperties = properties.stream()
+                .collect(Collectors.toMap(it -> it.name, it -> it));
+        final Set<String> implemented = new HashSet<>();
+        // the nearest declaration is the most specific one
+        final Deque<DataClassInfo> hierarchy = new ArrayDeque<>(Collections.singleton(dataClassInfo));
+        while (!hierarchy.isEmpty()) {
+            final DataClassInfo declaringClass = hierarchy.poll();
+            hierarchy.addAll(declaringClass.superClasses);
+            for (DataClassInfo.Property declared : declaringClass.properties) {
+                final DataClassInfo.Property property = storedProperties.get(declared.name);
+                final TypeName typeName = beanGenerator.propertyTypeName(declared);
+                final String methodName;
+                if (!declared.isReadOnly)
+                    methodName = declared.writeAccessorName();
+                else if (!declared.isFixed && !declaringClass.isAbstract)
+                    methodName = "of" + BeanGenerator.capitalize(declared.name);
+                else
+                    methodName = null;
+
+                if (methodName != null && implemented.add(methodName)) {
+                    final MethodSpec.Builder method = MethodSpec.methodBuilder(methodName)
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(declaringClass.metaClassName())
+                            .addParameter(typeName, declared.name);
+                    if (property != null && !property.isReadOnly && methodName.equals(property.writeAccessorName())) {
+                        if (property.notNullAnnotation != null && !typeName.isPrimitive())
+                            method.addCode(BeanGenerator.genCheckNotNull(dataClassInfo, property.name));
+                        method.addStatement("$T.this.$N[this.$$index] = $N", dataClassInfo.columnsClassName(),
+                                column(property), property.name)
+                                .addStatement("return this");
+                    } else {
+                        method.addStatement("return this.toBean().$N($N)", methodName, declared.name);
+                    }
+                    cursorClass.addMethod(method.build());
+                }
+
+                if (declared.isUnboxed && implemented.add(BeanGenerator.unboxedAccessorName(declared))) {
+                    cursorClass.addMethod(MethodSpec.methodBuilder(BeanGenerator.unboxedAccessorName(declared))
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(declared.storageTypeName())
+                            .addCode(property != null && property.isUnboxed ?
+                                    CodeBlock.builder().addStatement("return $T.this.$N[this.$$index]",
+                                            dataClassInfo.columnsClassName(), column(property)).build() :
+                                    CodeBlock.builder().addStatement("return this.$N()",
+                                            declared.readAccessorName()).build())
+                            .build());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Type of the column array element: primitive for primitive and unboxed properties, raw type for generic ones
+     */
+    private TypeName elementType(DataClassInfo.Property property) {
+        final TypeName typeName = property.isDataClass ?
+                beanGenerator.propertyTypeName(property) : property.storageTypeName();
+        if (typeName instanceof ParameterizedTypeName)
+            return ((ParameterizedTypeName) typeName).rawType;
+        return typeName;
+    }
+
+
+    /**
+     * Bulk column accessor names are plurals of the property names: age -> ages(), hobby -> hobbies().
+     * A plural colliding with the container methods or another accessor falls back to ageColumn().
+     */
+    private static Map<String, String> columnAccessorNames(List<DataClassInfo.Property> properties) {
+        final Map<String, String> plurals = new LinkedHashMap<>();
+        for (DataClassInfo.Property property : properties)
+            plurals.put(property.name, plural(property.name));
+        final Map<String, Long> counts = plurals.values().stream()
+                .collect(Collectors.groupingBy(it -> it, Collectors.counting()));
+        final Map<String, String> names = new HashMap<>();
+        plurals.forEach((name, plural) -> names.put(name,
+                RESERVED_NAMES.contains(plural) || counts.get(plural) > 1 ? name + "Column" : plural));
+        return names;
+    }
+
+
+    private static String plural(String name) {
+        if (name.endsWith("s"))
+            return name;
+        if (name.endsWith("x") || name.endsWith("ch") || name.endsWith("sh"))
+            return name + "es";
+        if (name.length() > 1 && name.endsWith("y") && "aeiou".indexOf(name.charAt(name.length() - 2)) < 0)
+            return name.substring(0, name.length() - 1) + "ies";
+        return name + "s";
+    }
+
+
+    private static String column(DataClassInfo.Property property) {
+        return "$" + property.name;
+    }
+}
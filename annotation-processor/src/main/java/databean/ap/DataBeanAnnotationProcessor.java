@@ -68,6 +68,8 @@ public class DataBeanAnnotationProcessor extends AbstractProcessor {
         for (DataClassInfo dataClassInfo : dataBeans.values()) {
             beanGenerator.generate(dataClassInfo);
         }
+        if (!dataBeans.isEmpty())
+            beanGenerator.generateMappers();
 
         return true;
     }
@@ -6,6 +6,7 @@ import com.squareup.javapoet.TypeName;
 import javax.annotation.Nullable;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import java.util.List;
 import java.util.Objects;
@@ -26,9 +27,17 @@ public class DataClassInfo {
         public final boolean isFixed;
         @Nullable
         public final AnnotationMirror notNullAnnotation;
+        /* non-null boxed value stored in a primitive field */
+        public final boolean isUnboxed;
+        /* beans are indexed by the property value in XxxIndex */
+        public final boolean isIndexed;
+        /* default value is set on the first read */
+        public final boolean isLazy;
 
         public Property(String name, boolean isBeanNameDeclaration, TypeMirror type, boolean isDataClass, boolean isInitial, boolean isReadOnly,
-                        boolean hasDefaultValue, @Nullable String defaultValueExpression, boolean isComputed, boolean isFixed, @Nullable AnnotationMirror notNullAnnotation)
+                        boolean hasDefaultValue, @Nullable String defaultValueExpression, boolean isComputed, boolean isFixed,
+                        @Nullable AnnotationMirror notNullAnnotation, boolean isUnboxed, boolean isIndexed,
+                        boolean isLazy)
         {
             this.name = name;
             this.isBeanNameDeclaration = isBeanNameDeclaration;
@@ -36,6 +45,9 @@ public class DataClassInfo {
             this.defaultValueExpression = defaultValueExpression;
             this.isFixed = isFixed;
             this.notNullAnnotation = notNullAnnotation;
+            this.isUnboxed = isUnboxed;
+            this.isIndexed = isIndexed;
+            this.isLazy = isLazy;
 
             /*   Preconditions */
             if (isInitial) {
@@ -56,6 +68,18 @@ public class DataClassInfo {
                 check(isReadOnly, true, "fixed property must be read-only");
                 check(isInitial, false, "fixed property must not be read-only");
             }
+            if (isIndexed) {
+                check(isComputed, false, "indexed property must not be computed");
+            }
+            if (isLazy) {
+                check(type.getKind().isPrimitive() || isUnboxed, false, "lazy property must be of reference type");
+                check(hasDefaultValue || !isInitial && notNullAnnotation != null, true,
+                        "lazy property must have default value");
+            }
+            if (isUnboxed) {
+                check(notNullAnnotation != null, true, "unboxed property must be non-null");
+                check(TypeName.get(type).isBoxedPrimitive(), true, "unboxed property must be of boxed primitive type");
+            }
 
             this.type = type;
             this.isInitial = isInitial;
@@ -84,6 +108,32 @@ public class DataClassInfo {
                     "is" : "get") + BeanGenerator.capitalize(name);
         }
 
+        /**
+         * Kind of the value stored in the bean field
+         */
+        public TypeKind storageKind() {
+            if (!isUnboxed)
+                return type.getKind();
+            switch (type.toString()) {
+                case "java.lang.Boolean": return TypeKind.BOOLEAN;
+                case "java.lang.Byte": return TypeKind.BYTE;
+                case "java.lang.Short": return TypeKind.SHORT;
+                case "java.lang.Character": return TypeKind.CHAR;
+                case "java.lang.Integer": return TypeKind.INT;
+                case "java.lang.Long": return TypeKind.LONG;
+                case "java.lang.Float": return TypeKind.FLOAT;
+                case "java.lang.Double": return TypeKind.DOUBLE;
+                default: throw new IllegalStateException("Not a boxed type: " + type);
+            }
+        }
+
+        /**
+         * Type of the bean field
+         */
+        public TypeName storageTypeName() {
+            return isUnboxed ? typeName().unbox() : typeName();
+        }
+
         public String setterName() {
             return "set" + BeanGenerator.capitalize(name);
         }
@@ -106,17 +156,17 @@ public class DataClassInfo {
 
         public Property withDefaults(boolean hasDefaultValue, String defaultValueExpression) {
             return new Property(name, isBeanNameDeclaration, type, isDataClass, isInitial, isReadOnly,
-                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation);
+                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation, isUnboxed, isIndexed, isLazy);
         }
 
         public Property withInitial(boolean isInitial) {
             return new Property(name, isBeanNameDeclaration, type, isDataClass, isInitial, isReadOnly,
-                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation);
+                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation, isUnboxed, isIndexed, isLazy);
         }
 
         public Property withReadOnly(boolean isReadOnly) {
             return new Property(name, isBeanNameDeclaration, type, isDataClass, isInitial, isReadOnly,
-                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation);
+                    hasDefaultValue, defaultValueExpression, isComputed, isFixed, notNullAnnotation, isUnboxed, isIndexed, isLazy);
         }
 
         @Override
@@ -133,6 +183,9 @@ public class DataClassInfo {
             if (isComputed != property.isComputed) return false;
             if (isReadOnly != property.isReadOnly) return false;
             if (isFixed != property.isFixed) return false;
+            if (isUnboxed != property.isUnboxed) return false;
+            if (isIndexed != property.isIndexed) return false;
+            if (isLazy != property.isLazy) return false;
             if (!name.equals(property.name)) return false;
             if (!type.equals(property.type)) return false;
             if (!Objects.equals(defaultValueExpression, property.defaultValueExpression))
@@ -153,6 +206,9 @@ public class DataClassInfo {
             result = 31 * result + (isReadOnly ? 1 : 0);
             result = 31 * result + (isFixed ? 1 : 0);
             result = 31 * result + (notNullAnnotation != null ? notNullAnnotation.hashCode() : 0);
+            result = 31 * result + (isUnboxed ? 1 : 0);
+            result = 31 * result + (isIndexed ? 1 : 0);
+            result = 31 * result + (isLazy ? 1 : 0);
             return result;
         }
 
@@ -180,6 +236,16 @@ public class DataClassInfo {
 
     public final boolean generateBeanAccessors;
     public final boolean inheritFromSuperclass;
+    public final boolean cacheHashCode;
+    public final boolean compactLayout;
+    public final boolean trackChanges;
+    public final boolean intern;
+    public final boolean concurrent;
+    public final boolean freezable;
+    /**
+     * Data interfaces mapped to and from this data class by the generated DataBeanMapper
+     */
+    public final List<TypeMirror> mappedWith;
     public final List<ExecutableElement> customConstructors;
 
     public final List<DataClassInfo> superClasses;
@@ -187,7 +253,9 @@ public class DataClassInfo {
 
     public DataClassInfo(@Nullable DataClassInfo enclosingClass, TypeMirror enclosingType,
                          TypeMirror classType, String metaClassSimpleName, boolean isAbstract, List<Property> properties,
-                         boolean generateBeanAccessors, boolean inheritFromSuperclass,
+                         boolean generateBeanAccessors, boolean inheritFromSuperclass, boolean cacheHashCode,
+                         boolean compactLayout, boolean trackChanges, boolean intern, boolean concurrent,
+                         boolean freezable, List<TypeMirror> mappedWith,
                          List<ExecutableElement> customConstructors, List<DataClassInfo> superClasses)
     {
         this.enclosingType = enclosingType;
@@ -197,6 +265,13 @@ public class DataClassInfo {
         this.isAbstract = isAbstract;
         this.generateBeanAccessors = generateBeanAccessors;
         this.inheritFromSuperclass = inheritFromSuperclass;
+        this.cacheHashCode = cacheHashCode;
+        this.compactLayout = compactLayout;
+        this.trackChanges = trackChanges;
+        this.intern = intern;
+        this.concurrent = concurrent;
+        this.freezable = freezable;
+        this.mappedWith = mappedWith;
         this.superClasses = superClasses;
         this.properties = properties;
         //this.metaClassName = metaClassName(className);
@@ -232,6 +307,86 @@ public class DataClassInfo {
             return ClassName.get(packageName(), beanClassName);
     }
 
+    /**
+     * Class holding static property descriptors: User -> UserMeta
+     */
+    public ClassName metadataClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.metadataClassName().nestedClass(metaClassSimpleName + "Meta");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Meta");
+    }
+
+    /**
+     * Class with binary ByteBuffer codec of the bean: User -> UserCodec
+     */
+    public ClassName codecClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.codecClassName().nestedClass(metaClassSimpleName + "Codec");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Codec");
+    }
+
+    /**
+     * Class with streaming JSON writer and reader of the bean: User -> UserJson
+     */
+    public ClassName jsonClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.jsonClassName().nestedClass(metaClassSimpleName + "Json");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Json");
+    }
+
+    /**
+     * Flyweight view over fixed-width record layout of the bean: Point -> PointRecord
+     */
+    public ClassName recordClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.recordClassName().nestedClass(metaClassSimpleName + "Record");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Record");
+    }
+
+    /**
+     * Struct-of-arrays container of the beans: User -> UserColumns
+     */
+    public ClassName columnsClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.columnsClassName().nestedClass(metaClassSimpleName + "Columns");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Columns");
+    }
+
+    /**
+     * Hash indexes of the beans by the @Indexed properties: User -> UserIndex
+     */
+    public ClassName indexClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.indexClassName().nestedClass(metaClassSimpleName + "Index");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Index");
+    }
+
+    /**
+     * Property diff and patch of two beans: User -> UserDiff
+     */
+    public ClassName diffClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.diffClassName().nestedClass(metaClassSimpleName + "Diff");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "Diff");
+    }
+
+    /**
+     * Read-only view delegating to any implementation of the data interface: User -> UserView
+     */
+    public ClassName viewClassName() {
+        if (enclosingClass != null)
+            return enclosingClass.viewClassName().nestedClass(metaClassSimpleName + "View");
+        else
+            return ClassName.get(packageName(), metaClassSimpleName + "View");
+    }
+
     public static String metaClassName(String className) {
         if (className.startsWith("I") && className.length() > 2 && Character.isUpperCase(className.charAt(1)))
             // IUser -> User
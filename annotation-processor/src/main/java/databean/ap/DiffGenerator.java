@@ -0,0 +1,259 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Generates the diff of two beans and its patch: UserDiff.diff(from, to), UserDiff.patch(target, diff).
+ * <p>
+ * The diff keeps a bit mask of the changed properties by the property index and the new values of the changed
+ * properties only. Changed nested data class values of the same bean class are diffed recursively by their own
+ * XxxDiff classes, other values are replaced. Patch sets mutable properties by setters, so indexes and change
+ * tracking of the target are updated. When the diff changes read-only properties the target is left as it is and
+ * the patch is applied to a copy, so interned values and cached hashes are never modified. Nested beans may be shared
+ * by several values, so they are patched as copies too and the copies are set to the patched bean.
+ */
+public class DiffGenerator {
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public DiffGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                         Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeDiffClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder diffClass = TypeSpec
+                .classBuilder(dataClassInfo.diffClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateDiffClass(diffClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), diffClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateDiffClass(TypeSpec.Builder diffClass, DataClassInfo dataClassInfo) {
+        if (!dataClassInfo.isAbstract) {
+            generateDiff(diffClass, dataClassInfo);
+        } else {
+            // holder of the nested data classes only
+            diffClass.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PRIVATE)
+                    .build());
+        }
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedDiffClass = TypeSpec
+                            .classBuilder(it.diffClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateDiffClass(nestedDiffClass, it);
+                    diffClass.addType(nestedDiffClass.build());
+                });
+    }
+
+
+    private void generateDiff(TypeSpec.Builder diffClass, DataClassInfo dataClassInfo) {
+        final ClassName diffClassName = dataClassInfo.diffClassName();
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+        final List<BeanPropertyInfo> beanProperties = beanPropertyResolver.beanProperties(dataClassInfo);
+        // single long mask up to 64 properties
+        final int words = beanProperties.size() > Long.SIZE ? (beanProperties.size() + Long.SIZE - 1) / Long.SIZE : 0;
+        final TypeName maskType = words == 0 ? TypeName.LONG : ArrayTypeName.of(TypeName.LONG);
+
+        diffClass.addField(FieldSpec.builder(diffClassName, "EMPTY", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T($L, new Object[0])", diffClassName,
+                                words == 0 ? "0" : "new long[" + words + "]")
+                        .build())
+                .addField(maskType, "changed", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(Object[].class, "values", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(maskType, "changed")
+                        .addParameter(Object[].class, "values")
+                        .addStatement("this.changed = changed")
+                        .addStatement("this.values = values")
+                        .build());
+
+        final MethodSpec.Builder diff = MethodSpec.methodBuilder("diff")
+                .addJavadoc("Changes of the properties that turn the from bean into the to bean\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(diffClassName)
+                .addParameter(metaClassName, "from")
+                .addParameter(metaClassName, "to")
+                .addStatement("final $T a = bean(from)", beanClassName)
+                .addStatement("final $T b = bean(to)", beanClassName)
+                .addStatement(words == 0 ? "long changed = 0" : "final long[] changed = new long[" + words + "]")
+                .addStatement("final Object[] values = new Object[$L]", beanProperties.size())
+                .addStatement("int count = 0");
+        final MethodSpec.Builder patchTarget = MethodSpec.methodBuilder("patch")
+                .addJavadoc("Applies the diff to the target bean equal to the from bean of the diff. Returns the target " +
+                        "or it's patched copy\nwhen the diff changes read-only properties.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(metaClassName)
+                .addParameter(metaClassName, "target")
+                .addParameter(diffClassName, "diff")
+                .addStatement("final $T bean = bean(target)", beanClassName);
+        if (beanGenerator.isFreezable(dataClassInfo)) {
+            // read-only properties are written directly and bypass the setter checks
+            patchTarget.beginControlFlow("if (bean.isFrozen())")
+                    .addStatement("throw new $T($S)", UnsupportedOperationException.class, "Frozen bean")
+                    .endControlFlow();
+        }
+        final MethodSpec.Builder patchCopy = MethodSpec.methodBuilder("patchCopy")
+                .addJavadoc("Applies the diff to a copy of the target bean\n")
+                .addModifiers(Modifier.STATIC)
+                .returns(metaClassName)
+                .addParameter(metaClassName, "target")
+                .addParameter(diffClassName, "diff")
+                .addStatement("return apply(new $T(bean(target)), diff)", beanClassName);
+        final MethodSpec.Builder apply = MethodSpec.methodBuilder("apply")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(metaClassName)
+                .addParameter(beanClassName, "bean")
+                .addParameter(diffClassName, "diff")
+                .addStatement("int count = 0");
+        // masks of the read-only properties by the mask word
+        final long[] readOnlyMask = new long[Math.max(words, 1)];
+
+        boolean uncheckedCasts = false;
+        for (int i = 0; i < beanProperties.size(); i++) {
+            final BeanPropertyInfo propertyInfo = beanProperties.get(i);
+            final DataClassInfo.Property property = propertyInfo.property;
+            // fixed values are the same for all beans of the class
+            if (property.isComputed || property.isFixed)
+                continue;
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final TypeName valueType = typeName.box();
+            uncheckedCasts |= typeName instanceof ParameterizedTypeName;
+            final CodeBlock mark = words == 0 ?
+                    CodeBlock.of("changed |= 1L << $L", i) :
+                    CodeBlock.of("changed[$L] |= 1L << $L", i / Long.SIZE, i % Long.SIZE);
+            final CodeBlock test = words == 0 ?
+                    CodeBlock.of("(diff.changed & 1L << $L) != 0", i) :
+                    CodeBlock.of("(diff.changed[$L] & 1L << $L) != 0", i / Long.SIZE, i % Long.SIZE);
+            if (property.isReadOnly)
+                readOnlyMask[i / Long.SIZE] |= 1L << i % Long.SIZE;
+            final CodeBlock write = property.isReadOnly ?
+                    beanGenerator.fieldWrite(dataClassInfo, "bean", property.name, CodeBlock.of("value")) :
+                    CodeBlock.builder()
+                            .addStatement("bean.$N(value)", property.writeAccessorName())
+                            .build();
+
+            final DataClassInfo nestedClass = property.isDataClass ? beanGenerator.resolveDataClass(property.type) : null;
+            if (nestedClass != null && !nestedClass.isAbstract) {
+                final ClassName nestedBeanClassName = nestedClass.beanClassName();
+                final ClassName nestedDiffClassName = nestedClass.diffClassName();
+                final String fromName = "from" + BeanGenerator.capitalize(property.name);
+                final String toName = "to" + BeanGenerator.capitalize(property.name);
+                diff.addStatement("final $T $N = $L", typeName, fromName, fieldValue(dataClassInfo, propertyInfo, "a"))
+                        .addStatement("final $T $N = $L", typeName, toName, fieldValue(dataClassInfo, propertyInfo, "b"))
+                        .beginControlFlow("if (!$T.equals($N, $N))", Objects.class, fromName, toName)
+                        .addStatement("$L", mark)
+                        // values of other bean classes are replaced
+                        .addStatement("values[count++] = $N != null && $N != null && $N.getClass() == $T.class && " +
+                                        "$N.getClass() == $T.class ? $T.diff($N, $N) : $N", fromName, toName,
+                                fromName, nestedBeanClassName, toName, nestedBeanClassName, nestedDiffClassName,
+                                fromName, toName, toName)
+                        .endControlFlow();
+                // the nested bean may be shared, so it's patched copy is set
+                apply.beginControlFlow("if ($L)", test)
+                        .addStatement("final Object change = diff.values[count++]")
+                        .addStatement("final $T value = change instanceof $T ? $T.patchCopy($L, ($T) change) : " +
+                                        "($T) change", typeName, nestedDiffClassName, nestedDiffClassName,
+                                fieldValue(dataClassInfo, propertyInfo, "bean"), nestedDiffClassName, typeName)
+                        .addCode(write)
+                        .endControlFlow();
+            } else {
+                diff.beginControlFlow("if ($L)", BeanGenerator.genValuesDiffer(property,
+                                fieldValue(dataClassInfo, propertyInfo, "a"), fieldValue(dataClassInfo, propertyInfo, "b")))
+                        .addStatement("$L", mark)
+                        .addStatement("values[count++] = $L", fieldValue(dataClassInfo, propertyInfo, "b"))
+                        .endControlFlow();
+                apply.beginControlFlow("if ($L)", test)
+                        .addStatement("final $T value = ($T) diff.values[count++]", valueType, valueType)
+                        .addCode(write)
+                        .endControlFlow();
+            }
+        }
+
+        diffClass.addMethod(diff
+                .addStatement("if (count == 0) return EMPTY")
+                .addStatement("return new $T(changed, count == values.length ? values : $T.copyOf(values, count))",
+                        diffClassName, Arrays.class)
+                .build());
+        if (uncheckedCasts)
+            apply.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                    .addMember("value", "$S", "unchecked")
+                    .build());
+
+        final List<String> readOnlyChanges = new ArrayList<>();
+        for (int i = 0; i < readOnlyMask.length; i++) {
+            if (readOnlyMask[i] != 0)
+                readOnlyChanges.add(words == 0 ?
+                        "(diff.changed & 0x" + Long.toHexString(readOnlyMask[i]) + "L) != 0" :
+                        "(diff.changed[" + i + "] & 0x" + Long.toHexString(readOnlyMask[i]) + "L) != 0");
+        }
+        if (readOnlyChanges.isEmpty())
+            patchTarget.addStatement("return apply(bean, diff)");
+        else
+            // read-only values are never written in place
+            patchTarget.addStatement("return apply($L ? new $T(bean) : bean, diff)",
+                    String.join(" || ", readOnlyChanges), beanClassName);
+        diffClass.addMethod(patchTarget.build());
+        diffClass.addMethod(patchCopy.build());
+        diffClass.addMethod(apply
+                .addStatement(dataClassInfo.intern ? "return $T.intern(bean)" : "return bean", metaClassName)
+                .build());
+
+        diffClass.addMethod(MethodSpec.methodBuilder("isEmpty")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return this.values.length == 0")
+                .build());
+        diffClass.addMethod(MethodSpec.methodBuilder("changed")
+                .addJavadoc(words == 0 ? "Bit mask of the changed properties by the property index\n" :
+                        "Bit mask of the changed properties by the property index, 64 properties per element\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(maskType)
+                .addStatement(words == 0 ? "return this.changed" : "return this.changed.clone()")
+                .build());
+
+        diffClass.addMethod(MethodSpec.methodBuilder("bean")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(beanClassName)
+                .addParameter(metaClassName, "value")
+                .beginControlFlow("if (value == null || value.getClass() != $T.class)", beanClassName)
+                .addStatement("throw new $T($S + (value == null ? null : value.getClass().getName()))",
+                        IllegalArgumentException.class, diffClassName.simpleName() + " can not diff ")
+                .endControlFlow()
+                .addStatement("return ($T) value", beanClassName)
+                .build());
+    }
+
+
+    private CodeBlock fieldValue(DataClassInfo dataClassInfo, BeanPropertyInfo propertyInfo, String target) {
+        final CodeBlock value = beanGenerator.fieldRead(dataClassInfo, target, propertyInfo.property.name);
+        if (propertyInfo.property.isDataClass && propertyInfo.beanSuperclassProperty != null)
+            // field may be declared in a bean superclass with a wider type
+            return CodeBlock.of("(($T) $L)", beanGenerator.propertyTypeName(propertyInfo.property), value);
+        return value;
+    }
+}
@@ -0,0 +1,228 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.IndexListener;
+import databean.IntHashIndex;
+import databean.LongHashIndex;
+import databean.ObjectHashIndex;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates hash indexes of the beans by the @Indexed properties:
+ * <pre>
+ *     UserIndex index = new UserIndex();
+ *     index.add(user);
+ *     List&lt;User&gt; adults = index.byAge(18);
+ * </pre>
+ * Integral properties are indexed by primitive hash tables, others by their boxed values. The index registers
+ * itself in the added beans, so their setters keep it up to date.
+ */
+public class IndexGenerator {
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public IndexGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                          Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeIndexClass(DataClassInfo dataClassInfo) throws IOException {
+        if (!hasIndexes(dataClassInfo))
+            return;
+
+        final TypeSpec.Builder indexClass = TypeSpec
+                .classBuilder(dataClassInfo.indexClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateIndexClass(indexClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), indexClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateIndexClass(TypeSpec.Builder indexClass, DataClassInfo dataClassInfo) {
+        if (beanGenerator.hasIndexedProperties(dataClassInfo)) {
+            generateIndex(indexClass, dataClassInfo);
+        } else {
+            // holder of the nested data classes only
+            indexClass.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PRIVATE)
+                    .build());
+        }
+
+        // nested data classes
+        nestedClasses(dataClassInfo).stream()
+                .filter(this::hasIndexes)
+                .forEach(it -> {
+                    TypeSpec.Builder nestedIndexClass = TypeSpec
+                            .classBuilder(it.indexClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateIndexClass(nestedIndexClass, it);
+                    indexClass.addType(nestedIndexClass.build());
+                });
+    }
+
+
+    private void generateIndex(TypeSpec.Builder indexClass, DataClassInfo dataClassInfo) {
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final List<BeanPropertyInfo> beanProperties = beanPropertyResolver.beanProperties(dataClassInfo);
+
+        indexClass.addSuperinterface(IndexListener.class)
+                .addField(TypeName.INT, "size", Modifier.PRIVATE);
+
+        final MethodSpec.Builder add = MethodSpec.methodBuilder("add")
+                .addJavadoc("Indexes the bean and registers the index in it, " +
+                        "so the changes of the indexed properties update the index\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(metaClassName, "value")
+                .beginControlFlow("if (!(value instanceof $T))", beanClassName)
+                .addStatement("throw new $T($S + value.getClass().getName())", IllegalArgumentException.class,
+                        dataClassInfo.indexClassName().simpleName() + " can not index ")
+                .endControlFlow()
+                .beginControlFlow("if (!(($T) value).$$addIndex(this))", beanClassName)
+                .addStatement("throw new $T($S)", IllegalArgumentException.class, "Bean is already indexed")
+                .endControlFlow();
+        final MethodSpec.Builder remove = MethodSpec.methodBuilder("remove")
+                .addJavadoc("Removes the bean from the index, returns false if it was not indexed\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(metaClassName, "value")
+                .beginControlFlow("if (!(value instanceof $T) || !(($T) value).$$removeIndex(this))",
+                        beanClassName, beanClassName)
+                .addStatement("return false")
+                .endControlFlow();
+        final Map<KeyKind, MethodSpec.Builder> changed = new EnumMap<>(KeyKind.class);
+        for (KeyKind kind : KeyKind.values()) {
+            changed.put(kind, MethodSpec.methodBuilder("changed")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(Object.class, "bean")
+                    .addParameter(TypeName.INT, "property")
+                    .addParameter(kind.typeName, "oldValue")
+                    .addParameter(kind.typeName, "newValue"));
+        }
+        final Map<KeyKind, List<CodeBlock>> changedCases = new EnumMap<>(KeyKind.class);
+
+        for (int i = 0; i < beanProperties.size(); i++) {
+            final DataClassInfo.Property property = beanProperties.get(i).property;
+            if (!property.isIndexed)
+                continue;
+            final KeyKind kind = KeyKind.of(property);
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final TypeName keyType = kind == KeyKind.OBJECT ? typeName.box() : kind.typeName;
+            final TypeName tableType = kind == KeyKind.INT ?
+                    ParameterizedTypeName.get(ClassName.get(IntHashIndex.class), metaClassName) :
+                    kind == KeyKind.LONG ?
+                            ParameterizedTypeName.get(ClassName.get(LongHashIndex.class), metaClassName) :
+                            ParameterizedTypeName.get(ClassName.get(ObjectHashIndex.class), keyType, metaClassName);
+            final CodeBlock key = CodeBlock.of("value.$N()", property.isUnboxed ?
+                    BeanGenerator.unboxedAccessorName(property) : property.readAccessorName());
+
+            final String table = "$" + property.name;
+            indexClass.addField(FieldSpec.builder(tableType, table, Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>()", ((ParameterizedTypeName) tableType).rawType)
+                    .build());
+            add.addStatement("this.$N.add($L, value)", table, key);
+            remove.addStatement("this.$N.remove($L, value)", table, key);
+
+            indexClass.addMethod(MethodSpec.methodBuilder("by" + BeanGenerator.capitalize(property.name))
+                    .addJavadoc("Beans with the $N value in the order of indexing\n", property.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(ParameterizedTypeName.get(ClassName.get(List.class), metaClassName))
+                    .addParameter(kind == KeyKind.OBJECT ? typeName : property.storageTypeName(), property.name)
+                    .addStatement("return this.$N.get($N)", table, property.name)
+                    .build());
+
+            final CodeBlock oldKey = kind == KeyKind.OBJECT ?
+                    CodeBlock.of("($T) oldValue", keyType) : CodeBlock.of("oldValue");
+            final CodeBlock newKey = kind == KeyKind.OBJECT ?
+                    CodeBlock.of("($T) newValue", keyType) : CodeBlock.of("newValue");
+            changedCases.computeIfAbsent(kind, k -> new ArrayList<>()).add(CodeBlock.builder()
+                    .add("case $L:\n$>", i)
+                    .addStatement("this.$N.remove($L, ($T) bean)", table, oldKey, metaClassName)
+                    .addStatement("this.$N.add($L, ($T) bean)", table, newKey, metaClassName)
+                    .addStatement("break$<")
+                    .build());
+        }
+
+        indexClass.addMethod(add
+                .addStatement("this.size++")
+                .build());
+        indexClass.addMethod(remove
+                .addStatement("this.size--")
+                .addStatement("return true")
+                .build());
+        indexClass.addMethod(MethodSpec.methodBuilder("size")
+                .addJavadoc("Number of the indexed beans\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return this.size")
+                .build());
+
+        for (KeyKind kind : KeyKind.values()) {
+            final MethodSpec.Builder method = changed.get(kind);
+            final List<CodeBlock> cases = changedCases.get(kind);
+            if (cases != null) {
+                method.beginControlFlow("switch (property)");
+                cases.forEach(method::addCode);
+                method.endControlFlow();
+            }
+            indexClass.addMethod(method.build());
+        }
+    }
+
+
+    private boolean hasIndexes(DataClassInfo dataClassInfo) {
+        return beanGenerator.hasIndexedProperties(dataClassInfo) ||
+                nestedClasses(dataClassInfo).stream().anyMatch(this::hasIndexes);
+    }
+
+
+    private List<DataClassInfo> nestedClasses(DataClassInfo dataClassInfo) {
+        return dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Hash table and IndexListener notification used for the property storage type
+     */
+    enum KeyKind {
+        INT(TypeName.INT),
+        LONG(TypeName.LONG),
+        OBJECT(TypeName.OBJECT);
+
+        final TypeName typeName;
+
+        KeyKind(TypeName typeName) {
+            this.typeName = typeName;
+        }
+
+        static KeyKind of(DataClassInfo.Property property) {
+            switch (property.storageKind()) {
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                case INT: return INT;
+                case LONG: return LONG;
+                default: return OBJECT;
+            }
+        }
+    }
+}
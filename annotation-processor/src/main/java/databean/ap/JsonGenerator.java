@@ -0,0 +1,293 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.JsonReader;
+import databean.JsonWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates streaming JSON writer and reader of the bean: UserJson.write(out, user), UserJson.read(in).
+ * <p>
+ * Property names are written from precomputed byte arrays, the reader dispatches properties by a switch on
+ * the name hash. Nested data classes are written and read by their own XxxJson classes. Fixed and computed
+ * properties are not read, absent properties get default values like $init() sets them, absent @Initial
+ * properties and absent or null @Nonnull properties without a default value are rejected. Values that are
+ * not beans (views, records, cursors, other implementations) are written through the accessors.
+ */
+public class JsonGenerator {
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+    private final CodecGenerator codecGenerator;
+
+    public JsonGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                         Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator,
+                         CodecGenerator codecGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+        this.codecGenerator = codecGenerator;
+    }
+
+
+    public void writeJsonClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder jsonClass = TypeSpec
+                .classBuilder(dataClassInfo.jsonClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateJsonClass(jsonClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), jsonClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateJsonClass(TypeSpec.Builder jsonClass, DataClassInfo dataClassInfo) {
+        jsonClass.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build());
+
+        if (!dataClassInfo.isAbstract) {
+            final String unsupportedReason = codecGenerator.unsupportedReason(dataClassInfo, new HashSet<>(), false);
+            if (unsupportedReason != null) {
+                procEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "JSON mapping of '" +
+                        dataClassInfo.className().simpleName() + "' is not generated: " + unsupportedReason);
+            } else {
+                generateJsonMethods(jsonClass, dataClassInfo);
+            }
+        }
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedJsonClass = TypeSpec
+                            .classBuilder(it.jsonClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateJsonClass(nestedJsonClass, it);
+                    jsonClass.addType(nestedJsonClass.build());
+                });
+    }
+
+
+    private void generateJsonMethods(TypeSpec.Builder jsonClass, DataClassInfo dataClassInfo) {
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final List<BeanPropertyInfo> beanProperties = beanPropertyResolver.beanProperties(dataClassInfo);
+        final List<BeanPropertyInfo> properties = beanProperties.stream()
+                .filter(it -> !it.property.isComputed)
+                .collect(Collectors.toList());
+        final String className = dataClassInfo.className().simpleName();
+
+        for (BeanPropertyInfo propertyInfo : properties) {
+            jsonClass.addField(FieldSpec.builder(byte[].class, nameConstant(propertyInfo.property),
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.name($S)", JsonWriter.class, propertyInfo.property.name)
+                    .build());
+        }
+
+        // writer
+        final MethodSpec.Builder write = MethodSpec.methodBuilder("write")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addException(IOException.class)
+                .addParameter(JsonWriter.class, "out")
+                .addParameter(dataClassInfo.metaClassName(), "value")
+                .beginControlFlow("if (value instanceof $T && value.getClass() != $T.class)", beanClassName,
+                        beanClassName)
+                // bean of a data subclass can not be read back
+                .addStatement("throw new $T($S + value.getClass().getName())", IllegalArgumentException.class,
+                        dataClassInfo.jsonClassName().simpleName() + " can not write ")
+                .endControlFlow()
+                .addStatement("out.beginObject()")
+                .beginControlFlow("if (value.getClass() == $T.class)", beanClassName)
+                .addStatement("final $T bean = ($T) value", beanClassName, beanClassName);
+        for (BeanPropertyInfo propertyInfo : properties) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            CodeBlock value = beanGenerator.fieldRead(dataClassInfo, "bean", property.name);
+            if (property.isDataClass && propertyInfo.beanSuperclassProperty != null)
+                // field may be declared in a bean superclass with a wider type
+                value = CodeBlock.of("(($T) $L)", beanGenerator.propertyTypeName(property), value);
+            writeProperty(write, property, value);
+        }
+        // other implementations are written through the accessors
+        write.nextControlFlow("else");
+        for (BeanPropertyInfo propertyInfo : properties) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            final String local = "value$" + property.name;
+            write.addStatement("final $T $N = value.$N()", beanGenerator.propertyTypeName(property), local,
+                    property.readAccessorName());
+            writeProperty(write, property, CodeBlock.of("$N", local));
+        }
+        jsonClass.addMethod(write
+                .endControlFlow()
+                .addStatement("out.endObject()")
+                .build());
+
+        // reader
+        final MethodSpec.Builder read = MethodSpec.methodBuilder("read")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addException(IOException.class)
+                .returns(dataClassInfo.metaClassName())
+                .addParameter(JsonReader.class, "in")
+                .addStatement("final $T bean = new $T()", beanClassName, beanClassName);
+
+        // fixed properties always keep their default values
+        final List<DataClassInfo.Property> readProperties = properties.stream()
+                .map(it -> it.property)
+                .filter(it -> !it.isFixed)
+                .collect(Collectors.toList());
+        // presence is tracked only for the properties that are required or get their default values after reading
+        final boolean constructorInitializes = beanProperties.stream().noneMatch(it -> it.property.isInitial);
+        final Set<String> trackedProperties = readProperties.stream()
+                .filter(it -> isRequired(it) || it.hasDefaultValue && !constructorInitializes)
+                .map(it -> it.name)
+                .collect(Collectors.toSet());
+        for (DataClassInfo.Property property : readProperties) {
+            if (trackedProperties.contains(property.name))
+                read.addStatement("boolean $N = false", presenceVariable(property));
+        }
+
+        final Map<Integer, List<DataClassInfo.Property>> propertiesByHash = new TreeMap<>();
+        for (DataClassInfo.Property property : readProperties)
+            propertiesByHash.computeIfAbsent(JsonReader.nameHash(property.name), k -> new ArrayList<>()).add(property);
+
+        read.addStatement("in.beginObject()")
+                .beginControlFlow("while (in.hasNext())")
+                .beginControlFlow("switch (in.nextNameHash())");
+        for (Map.Entry<Integer, List<DataClassInfo.Property>> entry : propertiesByHash.entrySet()) {
+            read.addCode("case $L:\n$>", entry.getKey());
+            for (DataClassInfo.Property property : entry.getValue()) {
+                read.beginControlFlow("if (in.nameEquals($N))", nameConstant(property));
+                if (CodecGenerator.isNullable(property)) {
+                    read.beginControlFlow("if (in.nextNull())")
+                            .addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                                    CodeBlock.of("null")))
+                            .nextControlFlow("else")
+                            .addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                                    readValue(property)))
+                            .endControlFlow();
+                } else {
+                    if (!property.type.getKind().isPrimitive() && !property.isUnboxed) {
+                        read.beginControlFlow("if (in.nextNull())")
+                                .addStatement("throw in.error($S)", "null value of non-null property " +
+                                        className + "." + property.name)
+                                .endControlFlow();
+                    }
+                    read.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                            readValue(property)));
+                }
+                if (trackedProperties.contains(property.name))
+                    read.addStatement("$N = true", presenceVariable(property));
+                read.addStatement("continue")
+                        .endControlFlow();
+            }
+            read.addStatement("break$<");
+        }
+        read.endControlFlow()
+                .addStatement("in.skipValue()")
+                .endControlFlow();
+
+        for (int i = 0; i < beanProperties.size(); i++) {
+            final DataClassInfo.Property property = beanProperties.get(i).property;
+            if (property.isComputed)
+                continue;
+            if (isRequired(property)) {
+                read.beginControlFlow("if (!$N)", presenceVariable(property))
+                        .addStatement("throw in.error($S)", "missing property " + className + "." + property.name)
+                        .endControlFlow();
+            } else if (property.hasDefaultValue && !constructorInitializes) {
+                // bean constructor without @Initial arguments does not call $init()
+                if (property.isFixed)
+                    read.addStatement("bean.$$default($L)", i);
+                else
+                    read.addStatement("if (!$N) bean.$$default($L)", presenceVariable(property), i);
+            }
+        }
+        jsonClass.addMethod(read
+                .addStatement("return bean")
+                .build());
+    }
+
+
+    private void writeProperty(MethodSpec.Builder write, DataClassInfo.Property property, CodeBlock value) {
+        write.addStatement("out.writeName($N)", nameConstant(property));
+        if (CodecGenerator.isNullable(property)) {
+            write.beginControlFlow("if ($L == null)", value)
+                    .addStatement("out.writeNull()")
+                    .nextControlFlow("else")
+                    .addStatement("$L", writeValue(property, value))
+                    .endControlFlow();
+        } else {
+            write.addStatement("$L", writeValue(property, value));
+        }
+    }
+
+
+    private CodeBlock writeValue(DataClassInfo.Property property, CodeBlock value) {
+        switch (codecGenerator.valueKind(property)) {
+            case BOOLEAN: return CodeBlock.of("out.writeBoolean($L)", value);
+            case BYTE:
+            case SHORT:
+            case INT: return CodeBlock.of("out.writeInt($L)", value);
+            case CHAR: return CodeBlock.of("out.writeChar($L)", value);
+            case LONG: return CodeBlock.of("out.writeLong($L)", value);
+            case FLOAT: return CodeBlock.of("out.writeFloat($L)", value);
+            case DOUBLE: return CodeBlock.of("out.writeDouble($L)", value);
+        }
+        if (property.isDataClass)
+            return CodeBlock.of("$T.write(out, $L)",
+                    Objects.requireNonNull(beanGenerator.resolveDataClass(property.type)).jsonClassName(), value);
+        if (codecGenerator.isEnum(property))
+            return CodeBlock.of("out.writeString($L.name())", value);
+        return CodeBlock.of("out.writeString($L)", value);
+    }
+
+
+    private CodeBlock readValue(DataClassInfo.Property property) {
+        final CodeBlock value;
+        switch (codecGenerator.valueKind(property)) {
+            case BOOLEAN: value = CodeBlock.of("in.nextBoolean()"); break;
+            case BYTE: value = CodeBlock.of("(byte) in.nextInt()"); break;
+            case SHORT: value = CodeBlock.of("(short) in.nextInt()"); break;
+            case CHAR: value = CodeBlock.of("in.nextChar()"); break;
+            case INT: value = CodeBlock.of("in.nextInt()"); break;
+            case LONG: value = CodeBlock.of("in.nextLong()"); break;
+            case FLOAT: value = CodeBlock.of("in.nextFloat()"); break;
+            case DOUBLE: value = CodeBlock.of("in.nextDouble()"); break;
+            default:
+                if (property.isDataClass)
+                    return CodeBlock.of("$T.read(in)",
+                            Objects.requireNonNull(beanGenerator.resolveDataClass(property.type)).jsonClassName());
+                if (codecGenerator.isEnum(property))
+                    return CodeBlock.of("$T.valueOf(in.nextString())", property.typeName());
+                return CodeBlock.of("in.nextString()");
+        }
+        if (property.typeName().isBoxedPrimitive() && !property.isUnboxed)
+            return CodeBlock.of("$T.valueOf($L)", property.typeName(), value);
+        return value;
+    }
+
+
+    private static boolean isRequired(DataClassInfo.Property property) {
+        return property.isInitial || property.notNullAnnotation != null && !property.hasDefaultValue;
+    }
+
+
+    private static String nameConstant(DataClassInfo.Property property) {
+        return "$" + property.name;
+    }
+
+
+    private static String presenceVariable(DataClassInfo.Property property) {
+        return "present$" + property.name;
+    }
+}
@@ -0,0 +1,301 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.DataBeanMapperRegistry;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Generates DataBeanMapper of every package with data classes: a {@link DataBeanMapperRegistry} with the copiers
+ * between the data classes of the processed sources that target the data classes of the package.
+ * <pre>
+ *     public static User userFromPerson(IPerson source) { ... }
+ * </pre>
+ * Properties are mapped by name when the source property type is the same or narrower than the target one and
+ * a non-null target property is not filled from a nullable source property, like the properties inherited by data
+ * classes are consolidated. Nested data class values of the same or narrower class are deep copied, values of
+ * other data classes are mapped by their own copiers. Only the pairs declared by DataClass.mappedWith() and the
+ * pairs of their nested data classes are mapped, a pair is mapped when the source fills all the initial properties
+ * of the target, the values are assigned to the fields of the new bean directly.
+ * <p>
+ * The mapper is generated from the data classes of the current compilation round, so incremental compilation of
+ * a part of the package drops the mappings of the other data classes.
+ */
+public class MapperGenerator {
+    static final String MAPPER_CLASS_NAME = "DataBeanMapper";
+
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+    /* source -> target -> copier method name, the pairs of the data classes that can be mapped */
+    private final Map<DataClassInfo, Map<DataClassInfo, String>> copiers = new LinkedHashMap<>();
+
+    public MapperGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                           Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeMapperClasses() throws IOException {
+        resolveCopiers();
+
+        final Map<String, List<DataClassInfo>> packages = new TreeMap<>();
+        for (DataClassInfo dataClassInfo : dataBeans.values())
+            packages.computeIfAbsent(dataClassInfo.packageName(), k -> new ArrayList<>()).add(dataClassInfo);
+
+        for (Map.Entry<String, List<DataClassInfo>> entry : packages.entrySet()) {
+            final TypeSpec.Builder mapperClass = TypeSpec
+                    .classBuilder(ClassName.get(entry.getKey(), MAPPER_CLASS_NAME))
+                    .superclass(DataBeanMapperRegistry.class)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+            generateMapperClass(mapperClass, entry.getValue());
+
+            JavaFile.builder(entry.getKey(), mapperClass.build()).build()
+                    .writeTo(procEnv.getFiler());
+        }
+    }
+
+
+    /**
+     * Pairs are resolved optimistically: a nested pair that is being resolved is supposed to be mappable, so the
+     * data classes nesting each other are mapped recursively
+     */
+    private void resolveCopiers() {
+        final Map<DataClassInfo, Set<DataClassInfo>> mappable = new LinkedHashMap<>();
+        boolean changed = true;
+        for (DataClassInfo dataClassInfo : dataBeans.values()) {
+            for (TypeMirror mappedWith : dataClassInfo.mappedWith) {
+                final DataClassInfo other = beanGenerator.resolveDataClass(mappedWith);
+                if (other == null)
+                    throw new RuntimeException("DataClass '" + dataClassInfo.className().simpleName() +
+                            "' is mapped with " + mappedWith + " that is not a data class");
+                addPair(mappable, dataClassInfo, other);
+                addPair(mappable, other, dataClassInfo);
+            }
+        }
+        // pairs depending on the pairs that are not mappable are removed until none is removed
+        while (changed) {
+            changed = false;
+            for (Map.Entry<DataClassInfo, Set<DataClassInfo>> entry : mappable.entrySet()) {
+                for (Iterator<DataClassInfo> it = entry.getValue().iterator(); it.hasNext(); ) {
+                    if (!isMappable(entry.getKey(), it.next(), mappable)) {
+                        it.remove();
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        // copier names are unique per target package
+        final Map<String, Set<String>> names = new HashMap<>();
+        mappable.forEach((source, sourceTargets) -> sourceTargets.forEach(target -> {
+            final Set<String> packageNames = names.computeIfAbsent(target.packageName(), k -> new HashSet<>());
+            final String name = uncapitalize(simpleName(target)) + "From" + simpleName(source);
+            String unique = name;
+            for (int i = 2; !packageNames.add(unique); i++)
+                unique = name + i;
+            copiers.computeIfAbsent(source, k -> new LinkedHashMap<>()).put(target, unique);
+        }));
+    }
+
+
+    /**
+     * Adds the pair and the pairs of the nested data classes of the properties with the same name
+     */
+    private void addPair(Map<DataClassInfo, Set<DataClassInfo>> mappable, DataClassInfo source, DataClassInfo target) {
+        // same class is copied by Xxx.from(), copies are registered for the data classes of this round only
+        if (source == target || target.isAbstract || !dataBeans.containsValue(target) ||
+                !mappable.computeIfAbsent(source, k -> new LinkedHashSet<>()).add(target))
+            return;
+        final Map<String, DataClassInfo.Property> sourceProperties = sourceProperties(source);
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(target)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            final DataClassInfo.Property sourceProperty = sourceProperties.get(property.name);
+            if (property.isDataClass && sourceProperty != null && sourceProperty.isDataClass &&
+                    !procEnv.getTypeUtils().isSubtype(sourceProperty.type, property.type))
+                addPair(mappable, beanGenerator.resolveDataClass(sourceProperty.type),
+                        beanGenerator.resolveDataClass(property.type));
+        }
+    }
+
+
+    private boolean isMappable(DataClassInfo source, DataClassInfo target,
+                               Map<DataClassInfo, Set<DataClassInfo>> mappable)
+    {
+        final Map<String, DataClassInfo.Property> sourceProperties = sourceProperties(source);
+        boolean mapsAny = false;
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(target)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (property.isComputed || property.isFixed && !property.isInitial)
+                continue;
+            final DataClassInfo.Property sourceProperty = sourceProperties.get(property.name);
+            final boolean maps = sourceProperty != null &&
+                    isCompatible(sourceProperty, property,
+                            (s, t) -> mappable.getOrDefault(s, Collections.emptySet()).contains(t));
+            if (property.isInitial && !maps)
+                return false;
+            mapsAny |= maps;
+        }
+        return mapsAny;
+    }
+
+
+    private Map<String, DataClassInfo.Property> sourceProperties(DataClassInfo source) {
+        final Map<String, DataClassInfo.Property> properties = new HashMap<>();
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(source))
+            properties.put(propertyInfo.property.name, propertyInfo.property);
+        return properties;
+    }
+
+
+    private interface PairTest {
+        boolean isMapped(DataClassInfo source, DataClassInfo target);
+    }
+
+
+    private boolean isCompatible(DataClassInfo.Property source, DataClassInfo.Property target, PairTest pairTest) {
+        // non-null property is never filled from a nullable one
+        if (target.notNullAnnotation != null && source.notNullAnnotation == null && !source.type.getKind().isPrimitive())
+            return false;
+        final Types types = procEnv.getTypeUtils();
+        if (types.isSubtype(source.type, target.type))
+            return true;
+        final DataClassInfo sourceClass = source.isDataClass ? beanGenerator.resolveDataClass(source.type) : null;
+        final DataClassInfo targetClass = target.isDataClass ? beanGenerator.resolveDataClass(target.type) : null;
+        return sourceClass != null && targetClass != null && pairTest.isMapped(sourceClass, targetClass);
+    }
+
+
+    private void generateMapperClass(TypeSpec.Builder mapperClass, List<DataClassInfo> packageClasses) {
+        final MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC);
+
+        for (DataClassInfo target : packageClasses) {
+            if (target.isAbstract)
+                continue;
+            final ClassName[] targetKeys = {target.className(), target.metaClassName()};
+            final boolean hasInitial = beanPropertyResolver.beanProperties(target).stream()
+                    .anyMatch(it -> it.property.isInitial);
+            for (ClassName targetKey : targetKeys) {
+                if (!hasInitial)
+                    constructor.addStatement("registerFactory($T.class, $T::$N)", targetKey, target.metaClassName(),
+                            BeanGenerator.INIT_METHOD_NAME);
+                constructor.addStatement("registerCopier($T.class, $T.class, $T::from)", target.className(),
+                        targetKey, target.metaClassName());
+            }
+
+            for (Map.Entry<DataClassInfo, Map<DataClassInfo, String>> entry : copiers.entrySet()) {
+                final String copierName = entry.getValue().get(target);
+                if (copierName == null)
+                    continue;
+                final DataClassInfo source = entry.getKey();
+                for (ClassName targetKey : targetKeys)
+                    constructor.addStatement("registerCopier($T.class, $T.class, $T::$N)", source.className(),
+                            targetKey, ClassName.get(target.packageName(), MAPPER_CLASS_NAME), copierName);
+                mapperClass.addMethod(generateCopier(source, target, copierName));
+            }
+        }
+
+        mapperClass.addMethod(constructor.build());
+    }
+
+
+    private MethodSpec generateCopier(DataClassInfo source, DataClassInfo target, String copierName) {
+        final ClassName beanClassName = target.beanClassName();
+        final Map<String, DataClassInfo.Property> sourceProperties = sourceProperties(source);
+        final MethodSpec.Builder copier = MethodSpec.methodBuilder(copierName)
+                .addJavadoc("Maps the properties of $T to a new $T\n", source.className(), target.metaClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(target.metaClassName())
+                .addParameter(source.className(), "source")
+                .beginControlFlow("if (source == null)")
+                .addStatement("return null")
+                .endControlFlow();
+
+        final List<String> initialValues = new ArrayList<>();
+        final CodeBlock.Builder writes = CodeBlock.builder();
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(target)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (property.isComputed || property.isFixed && !property.isInitial)
+                continue;
+            final DataClassInfo.Property sourceProperty = sourceProperties.get(property.name);
+            if (sourceProperty == null || !isCompatible(sourceProperty, property, this::isCopied))
+                continue;
+
+            final CodeBlock value = mappedValue(copier, sourceProperty, property);
+            if (property.isInitial) {
+                final String local = "$" + property.name;
+                copier.addStatement("final $T $N = $L", beanGenerator.propertyTypeName(property), local, value);
+                initialValues.add(local);
+            } else {
+                writes.add(beanGenerator.fieldWrite(target, "target", property.name, value));
+            }
+        }
+        return copier
+                .addStatement("final $T target = new $T($L)", beanClassName, beanClassName,
+                        String.join(", ", initialValues))
+                .addCode(writes.build())
+                .addStatement("return target")
+                .build();
+    }
+
+
+    private boolean isCopied(DataClassInfo source, DataClassInfo target) {
+        return copierName(source, target) != null;
+    }
+
+
+    @Nullable
+    private String copierName(DataClassInfo source, DataClassInfo target) {
+        return copiers.getOrDefault(source, Collections.emptyMap()).get(target);
+    }
+
+
+    /**
+     * Value of the target property read from the source: nested data class values are read into a local
+     */
+    private CodeBlock mappedValue(MethodSpec.Builder copier, DataClassInfo.Property sourceProperty,
+                                  DataClassInfo.Property property)
+    {
+        final CodeBlock read = CodeBlock.of("source.$N()", sourceProperty.readAccessorName());
+        if (!property.isDataClass)
+            return read;
+        final DataClassInfo sourceClass = beanGenerator.resolveDataClass(sourceProperty.type);
+        final DataClassInfo targetClass = beanGenerator.resolveDataClass(property.type);
+        final String local = "$" + property.name + "Source";
+        copier.addStatement("final $T $N = $L", sourceClass.className(), local, read);
+        final CodeBlock copy;
+        if (procEnv.getTypeUtils().isSubtype(sourceProperty.type, property.type)) {
+            copy = BeanGenerator.genDeepCopy(targetClass, CodeBlock.of("$N", local));
+        } else {
+            copy = CodeBlock.of("$T.$N($N)", ClassName.get(targetClass.packageName(), MAPPER_CLASS_NAME),
+                    copierName(sourceClass, targetClass), local);
+        }
+        return CodeBlock.of("$N == null ? null : $L", local, copy);
+    }
+
+
+    /**
+     * Simple names of the meta class and it's enclosing classes: User.BirthInfo -> UserBirthInfo
+     */
+    private static String simpleName(DataClassInfo dataClassInfo) {
+        return String.join("", dataClassInfo.metaClassName().simpleNames());
+    }
+
+
+    private static String uncapitalize(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,116 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.Property;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generates static property descriptors of a data class:
+ * <pre>
+ *     public final class UserMeta {
+ *         public static final Property&lt;User, String&gt; name = ...;
+ *         public static final List&lt;Property&lt;User, ?&gt;&gt; PROPERTIES = ...;
+ *     }
+ * </pre>
+ * Property values are accessed by method references to the meta class accessors, so no reflection is involved.
+ */
+public class MetadataGenerator {
+    public static final String PROPERTIES_FIELD_NAME = "PROPERTIES";
+
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public MetadataGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                             Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeMetadataClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder metadataClass = TypeSpec
+                .classBuilder(dataClassInfo.metadataClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateMetadataClass(metadataClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), metadataClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateMetadataClass(TypeSpec.Builder metadataClass, DataClassInfo dataClassInfo) {
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+
+        metadataClass.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build());
+
+        final List<DataClassInfo.Property> properties = beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .map(it -> it.property)
+                .collect(Collectors.toList());
+
+        for (int index = 0; index < properties.size(); index++) {
+            final DataClassInfo.Property property = properties.get(index);
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final TypeName rawTypeName = typeName instanceof ParameterizedTypeName ?
+                    ((ParameterizedTypeName) typeName).rawType : typeName;
+
+            final CodeBlock setter;
+            if (property.isReadOnly)
+                setter = CodeBlock.of("null");
+            else
+                setter = CodeBlock.of("(bean, value) -> bean.$N(value)", property.writeAccessorName());
+
+            metadataClass.addField(FieldSpec
+                    .builder(propertyTypeName(metaClassName, typeName.box()), property.name,
+                            Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T<>($L, $S, $T.class, $L, $L, $L, $L, $T::$N, $L)",
+                            Property.class, index, property.name, rawTypeName,
+                            property.isInitial, property.isReadOnly, property.isFixed,
+                            property.notNullAnnotation != null,
+                            metaClassName, property.readAccessorName(), setter)
+                    .build());
+        }
+
+        metadataClass.addField(FieldSpec
+                .builder(ParameterizedTypeName.get(ClassName.get(List.class),
+                        propertyTypeName(metaClassName, WildcardTypeName.subtypeOf(Object.class))),
+                        PROPERTIES_FIELD_NAME, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.unmodifiableList($T.asList($L))", Collections.class, Arrays.class,
+                        properties.stream()
+                                .map(it -> it.name)
+                                .collect(Collectors.joining(", ")))
+                .build());
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedMetadataClass = TypeSpec
+                            .classBuilder(it.metadataClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateMetadataClass(nestedMetadataClass, it);
+                    metadataClass.addType(nestedMetadataClass.build());
+                });
+    }
+
+
+    private static TypeName propertyTypeName(ClassName metaClassName, TypeName valueTypeName) {
+        return ParameterizedTypeName.get(ClassName.get(Property.class), metaClassName, valueTypeName);
+    }
+}
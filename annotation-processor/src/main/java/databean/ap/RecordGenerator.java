@@ -0,0 +1,350 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+import databean.RecordLayout;
+import databean.RecordView;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates fixed-width record layout and flyweight view for data classes made only of primitive properties
+ * and nested data classes of the same kind:
+ * <pre>
+ *     public final class PointRecord implements Point, RecordView&lt;Point&gt; {
+ *         public static final int SIZE = 8;
+ *         public static final RecordLayout&lt;Point&gt; LAYOUT = ...;
+ *     }
+ * </pre>
+ * The view reads and writes the properties directly in the buffer. Fields follow the bean property order
+ * without padding, a nullable nested data class is preceded by a presence byte. Data classes that inherit
+ * other data classes are not supported.
+ */
+public class RecordGenerator {
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public RecordGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                           Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeRecordClass(DataClassInfo dataClassInfo) throws IOException {
+        if (!hasRecordLayout(dataClassInfo, new HashSet<>()))
+            return;
+
+        final TypeSpec.Builder recordClass = TypeSpec
+                .classBuilder(dataClassInfo.recordClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateRecordClass(recordClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), recordClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateRecordClass(TypeSpec.Builder recordClass, DataClassInfo dataClassInfo) {
+        final ClassName recordClassName = dataClassInfo.recordClassName();
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+        final List<DataClassInfo.Property> properties = recordProperties(dataClassInfo);
+
+        recordClass.addSuperinterface(metaClassName)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(RecordView.class), metaClassName));
+
+        recordClass.addField(FieldSpec.builder(TypeName.INT, "SIZE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", recordSize(dataClassInfo))
+                .build());
+        recordClass.addField(FieldSpec.builder(
+                ParameterizedTypeName.get(ClassName.get(RecordLayout.class), metaClassName), "LAYOUT",
+                Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", TypeSpec.anonymousClassBuilder("")
+                        .addSuperinterface(ParameterizedTypeName.get(ClassName.get(RecordLayout.class), metaClassName))
+                        .addMethod(MethodSpec.methodBuilder("size")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(TypeName.INT)
+                                .addStatement("return SIZE")
+                                .build())
+                        .addMethod(MethodSpec.methodBuilder("write")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .addParameter(ByteBuffer.class, "buffer")
+                                .addParameter(TypeName.INT, "offset")
+                                .addParameter(metaClassName, "value")
+                                .addStatement("$T.write(buffer, offset, value)", recordClassName)
+                                .build())
+                        .addMethod(MethodSpec.methodBuilder("newView")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(ParameterizedTypeName.get(ClassName.get(RecordView.class), metaClassName))
+                                .addStatement("return new $T()", recordClassName)
+                                .build())
+                        .build())
+                .build());
+
+        recordClass.addField(ByteBuffer.class, "$buffer", Modifier.PRIVATE);
+        recordClass.addField(TypeName.INT, "$offset", Modifier.PRIVATE);
+
+        final MethodSpec.Builder wrap = MethodSpec.methodBuilder("wrap")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(recordClassName)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addParameter(TypeName.INT, "offset")
+                .addStatement("this.$$buffer = buffer")
+                .addStatement("this.$$offset = offset");
+        final MethodSpec.Builder write = MethodSpec.methodBuilder("write")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addParameter(TypeName.INT, "offset")
+                .addParameter(metaClassName, "value");
+        final MethodSpec.Builder toBean = MethodSpec.methodBuilder("toBean")
+                .addJavadoc("Copies the record to a new bean\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName)
+                .addStatement("final $T bean = new $T()", beanClassName, beanClassName);
+
+        int offset = 0;
+        for (DataClassInfo.Property property : properties) {
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final CodeBlock fieldOffset = CodeBlock.of("this.$$offset + $L", offset);
+            final MethodSpec.Builder getter = MethodSpec.methodBuilder(property.readAccessorName())
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(typeName);
+            final MethodSpec.Builder setter = MethodSpec.methodBuilder(property.writeAccessorName())
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(metaClassName)
+                    .addParameter(typeName, property.name);
+
+            if (property.isDataClass) {
+                final DataClassInfo propertyClass = Objects.requireNonNull(beanGenerator.resolveDataClass(property.type));
+                final ClassName propertyRecordClassName = propertyClass.recordClassName();
+                final String viewField = "$" + property.name;
+                final boolean nullable = property.notNullAnnotation == null;
+                final int valueOffset = nullable ? offset + 1 : offset;
+
+                recordClass.addField(FieldSpec.builder(propertyRecordClassName, viewField,
+                        Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", propertyRecordClassName)
+                        .build());
+                wrap.addStatement("this.$N.wrap(buffer, offset + $L)", viewField, valueOffset);
+                write.addStatement("final $T $N = value.$N()", typeName, property.name, property.readAccessorName());
+                if (nullable) {
+                    getter.addStatement("return this.$$buffer.get($L) != 0 ? this.$N : null", fieldOffset, viewField);
+                    write.beginControlFlow("if ($N != null)", property.name)
+                            .addStatement("buffer.put(offset + $L, (byte) 1)", offset)
+                            .addStatement("$T.write(buffer, offset + $L, $N)", propertyRecordClassName, valueOffset,
+                                    property.name)
+                            .nextControlFlow("else")
+                            .addStatement("buffer.put(offset + $L, (byte) 0)", offset)
+                            .endControlFlow();
+                    toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                            CodeBlock.of("this.$$buffer.get($L) != 0 ? this.$N.toBean() : null", fieldOffset,
+                                    viewField)));
+                } else {
+                    getter.addStatement("return this.$N", viewField);
+                    write.addStatement("$T.write(buffer, offset + $L, $T.requireNonNull($N, $S))",
+                            propertyRecordClassName, valueOffset, Objects.class, property.name,
+                            dataClassInfo.className().simpleName() + "." + property.name);
+                    toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                            CodeBlock.of("this.$N.toBean()", viewField)));
+                }
+                if (!property.isReadOnly)
+                    setter.addStatement("$T.write(this.$$buffer, this.$$offset, this.toBean().$N($N))",
+                            dataClassInfo.recordClassName(), property.writeAccessorName(), property.name);
+                offset = valueOffset + recordSize(propertyClass);
+            } else {
+                final TypeKind kind = property.storageKind();
+                final CodeBlock value = property.isUnboxed ?
+                        CodeBlock.of("value.$N()", BeanGenerator.unboxedAccessorName(property)) :
+                        CodeBlock.of("value.$N()", property.readAccessorName());
+                getter.addStatement("return $L", get(kind, "this.$buffer", fieldOffset));
+                write.addStatement("$L", put(kind, "buffer", CodeBlock.of("offset + $L", offset), value));
+                setter.addStatement("$L", put(kind, "this.$buffer", fieldOffset, CodeBlock.of("$N", property.name)));
+                toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                        get(kind, "this.$buffer", fieldOffset)));
+                if (property.isUnboxed) {
+                    recordClass.addMethod(MethodSpec.methodBuilder(BeanGenerator.unboxedAccessorName(property))
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(property.storageTypeName())
+                            .addStatement("return $L", get(kind, "this.$buffer", fieldOffset))
+                            .build());
+                }
+                offset += storageSize(kind);
+            }
+
+            recordClass.addMethod(getter.build());
+            if (!property.isReadOnly) {
+                recordClass.addMethod(setter.addStatement("return this").build());
+            } else if (!property.isFixed) {
+                recordClass.addMethod(MethodSpec.methodBuilder("of" + BeanGenerator.capitalize(property.name))
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(metaClassName)
+                        .addParameter(typeName, property.name)
+                        .addStatement("return this.toBean().$N($N)", "of" + BeanGenerator.capitalize(property.name),
+                                property.name)
+                        .build());
+            }
+        }
+
+        recordClass.addMethod(wrap.addStatement("return this").build());
+        recordClass.addMethod(write.build());
+        recordClass.addMethod(toBean.addStatement("return bean").build());
+
+        recordClass.addMethod(MethodSpec.methodBuilder("with")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName.nestedClass("With"))
+                .addStatement("return this.toBean().with()")
+                .build());
+        if (beanGenerator.isFreezable(dataClassInfo)) {
+            recordClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(metaClassName)
+                    // freezing a copy would leave this value modifiable
+                    .addStatement("throw new $T($S)", UnsupportedOperationException.class,
+                            "Only beans can be frozen")
+                    .build());
+            recordClass.addMethod(MethodSpec.methodBuilder("isFrozen")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return false")
+                    .build());
+        }
+
+        // value semantics of the bean without copying
+        beanGenerator.generateValueObjectMethods(recordClass, dataClassInfo);
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .filter(it -> hasRecordLayout(it, new HashSet<>()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedRecordClass = TypeSpec
+                            .classBuilder(it.recordClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateRecordClass(nestedRecordClass, it);
+                    recordClass.addType(nestedRecordClass.build());
+                });
+    }
+
+
+    private List<DataClassInfo.Property> recordProperties(DataClassInfo dataClassInfo) {
+        return beanPropertyResolver.beanProperties(dataClassInfo).stream()
+                .map(it -> it.property)
+                .filter(it -> !it.isComputed)
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Data class has the generated XxxRecord
+     */
+    boolean hasRecordLayout(DataClassInfo dataClassInfo) {
+        return hasRecordLayout(dataClassInfo, new HashSet<>());
+    }
+
+
+    /**
+     * Data class can be stored in a fixed-width record if all it's properties are primitive or
+     * nested data classes that can be stored in a fixed-width record
+     */
+    private boolean hasRecordLayout(DataClassInfo dataClassInfo, Set<ClassName> visiting) {
+        if (dataClassInfo.isAbstract || !dataClassInfo.superClasses.isEmpty())
+            return false;
+        if (dataClassInfo.enclosingClass != null && !hasRecordLayout(dataClassInfo.enclosingClass, new HashSet<>()))
+            return false;
+        // recursive data class has no fixed size
+        if (!visiting.add(dataClassInfo.className()))
+            return false;
+        for (DataClassInfo.Property property : recordProperties(dataClassInfo)) {
+            if (property.isDataClass) {
+                final DataClassInfo propertyClass = Objects.requireNonNull(beanGenerator.resolveDataClass(property.type));
+                if (!hasRecordLayout(propertyClass, visiting))
+                    return false;
+            } else if (!property.storageKind().isPrimitive()) {
+                return false;
+            }
+        }
+        visiting.remove(dataClassInfo.className());
+        return true;
+    }
+
+
+    private int recordSize(DataClassInfo dataClassInfo) {
+        int size = 0;
+        for (DataClassInfo.Property property : recordProperties(dataClassInfo)) {
+            if (property.isDataClass) {
+                size += (property.notNullAnnotation == null ? 1 : 0) +
+                        recordSize(Objects.requireNonNull(beanGenerator.resolveDataClass(property.type)));
+            } else {
+                size += storageSize(property.storageKind());
+            }
+        }
+        return size;
+    }
+
+
+    private static int storageSize(TypeKind kind) {
+        switch (kind) {
+            case LONG:
+            case DOUBLE: return 8;
+            case INT:
+            case FLOAT: return 4;
+            case SHORT:
+            case CHAR: return 2;
+            default: return 1;
+        }
+    }
+
+
+    @Nullable
+    private static String bufferMethodSuffix(TypeKind kind) {
+        switch (kind) {
+            case BYTE: return "";
+            case SHORT: return "Short";
+            case CHAR: return "Char";
+            case INT: return "Int";
+            case LONG: return "Long";
+            case FLOAT: return "Float";
+            case DOUBLE: return "Double";
+            default: return null;
+        }
+    }
+
+
+    private static CodeBlock get(TypeKind kind, String buffer, CodeBlock offset) {
+        if (kind == TypeKind.BOOLEAN)
+            return CodeBlock.of("$L.get($L) != 0", buffer, offset);
+        return CodeBlock.of("$L.get$L($L)", buffer, bufferMethodSuffix(kind), offset);
+    }
+
+
+    private static CodeBlock put(TypeKind kind, String buffer, CodeBlock offset, CodeBlock value) {
+        if (kind == TypeKind.BOOLEAN)
+            return CodeBlock.of("$L.put($L, (byte) ($L ? 1 : 0))", buffer, offset, value);
+        return CodeBlock.of("$L.put$L($L, $L)", buffer, bufferMethodSuffix(kind), offset, value);
+    }
+}
@@ -0,0 +1,225 @@
+package databean.ap;
+
+import com.squareup.javapoet.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Generates read-only view of any implementation of the data interface returned by User.view(value) and
+ * User.cast(value):
+ * <pre>
+ *     public final class UserView implements User {
+ *         UserView(IUser source) { ... }
+ *     }
+ * </pre>
+ * Read accessors are delegated to the source, so nothing is copied. Nested data class values are wrapped by their
+ * own views on access and the view is reused while the source returns the same value. Write accessors throw
+ * UnsupportedOperationException, copy-setters and with() work on a bean copy of the view. Nested values of abstract
+ * data classes are viewed by their concrete data class on every access. The view is equal to the bean of the same
+ * data class with the same values and the other way round.
+ */
+public class ViewGenerator {
+    private final ProcessingEnvironment procEnv;
+    private final BeanPropertyResolver beanPropertyResolver;
+    private final Map<TypeName, DataClassInfo> dataBeans;
+    private final BeanGenerator beanGenerator;
+
+    public ViewGenerator(ProcessingEnvironment procEnv, BeanPropertyResolver beanPropertyResolver,
+                         Map<TypeName, DataClassInfo> dataBeans, BeanGenerator beanGenerator)
+    {
+        this.procEnv = procEnv;
+        this.beanPropertyResolver = beanPropertyResolver;
+        this.dataBeans = dataBeans;
+        this.beanGenerator = beanGenerator;
+    }
+
+
+    public void writeViewClass(DataClassInfo dataClassInfo) throws IOException {
+        final TypeSpec.Builder viewClass = TypeSpec
+                .classBuilder(dataClassInfo.viewClassName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        generateViewClass(viewClass, dataClassInfo);
+
+        JavaFile.builder(dataClassInfo.packageName(), viewClass.build()).build()
+                .writeTo(procEnv.getFiler());
+    }
+
+
+    private void generateViewClass(TypeSpec.Builder viewClass, DataClassInfo dataClassInfo) {
+        if (!dataClassInfo.isAbstract) {
+            generateView(viewClass, dataClassInfo);
+        } else {
+            // holder of the nested data classes only
+            viewClass.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PRIVATE)
+                    .build());
+        }
+
+        // nested data classes
+        dataBeans.values().stream()
+                .filter(it -> it.enclosingClass != null &&
+                        it.enclosingClass.className().equals(dataClassInfo.className()))
+                .forEach(it -> {
+                    TypeSpec.Builder nestedViewClass = TypeSpec
+                            .classBuilder(it.viewClassName().simpleName())
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+                    generateViewClass(nestedViewClass, it);
+                    viewClass.addType(nestedViewClass.build());
+                });
+    }
+
+
+    private void generateView(TypeSpec.Builder viewClass, DataClassInfo dataClassInfo) {
+        final ClassName viewClassName = dataClassInfo.viewClassName();
+        final ClassName metaClassName = dataClassInfo.metaClassName();
+        final ClassName beanClassName = dataClassInfo.beanClassName();
+
+        viewClass.addSuperinterface(metaClassName)
+                .addField(dataClassInfo.className(), "$source", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(dataClassInfo.className(), "source")
+                        .addStatement("this.$$source = source")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("$viewOf")
+                        .addJavadoc("Whether the view delegates to the value\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.BOOLEAN)
+                        .addParameter(Object.class, "value")
+                        .addStatement("return this.$$source == value")
+                        .build());
+
+        final MethodSpec.Builder toBean = MethodSpec.methodBuilder("toBean")
+                .addJavadoc("Copies the viewed values to a new bean, nested views are copied as well\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName)
+                .addStatement("final $T bean = new $T()", beanClassName, beanClassName);
+
+        for (BeanPropertyInfo propertyInfo : beanPropertyResolver.beanProperties(dataClassInfo)) {
+            final DataClassInfo.Property property = propertyInfo.property;
+            if (property.isComputed)
+                continue;
+            final TypeName typeName = beanGenerator.propertyTypeName(property);
+            final MethodSpec.Builder getter = MethodSpec.methodBuilder(property.readAccessorName())
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(typeName);
+
+            final DataClassInfo nestedClass = property.isDataClass ? beanGenerator.resolveDataClass(property.type) : null;
+            if (nestedClass != null && !nestedClass.isAbstract) {
+                final ClassName nestedViewClassName = nestedClass.viewClassName();
+                final String cacheName = "$" + property.name;
+                viewClass.addField(nestedViewClassName, cacheName, Modifier.PRIVATE);
+                viewClass.addMethod(MethodSpec.methodBuilder(cacheName)
+                        .addModifiers(Modifier.PRIVATE)
+                        .returns(nestedViewClassName)
+                        .addStatement("final $T value = this.$$source.$N()", nestedClass.className(),
+                                property.readAccessorName())
+                        .beginControlFlow("if (value == null || value instanceof $T)", nestedViewClassName)
+                        .addStatement("return ($T) value", nestedViewClassName)
+                        .endControlFlow()
+                        // the view is reused while the source returns the same value
+                        .addStatement("final $T view = this.$N", nestedViewClassName, cacheName)
+                        .beginControlFlow("if (view != null && view.$$viewOf(value))")
+                        .addStatement("return view")
+                        .endControlFlow()
+                        .addStatement("return this.$N = new $T(value)", cacheName, nestedViewClassName)
+                        .build());
+                getter.addStatement("return this.$N()", cacheName);
+                toBean.addStatement("final $T $N = this.$N()", nestedViewClassName, property.name, cacheName)
+                        .addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                                CodeBlock.of("$N == null ? null : $N.toBean()", property.name, property.name)));
+            } else if (nestedClass != null) {
+                // values of abstract classes are viewed and copied by their concrete data class
+                getter.addStatement("return $T.view(this.$$source.$N())", nestedClass.metaClassName(),
+                        property.readAccessorName());
+                toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name,
+                        CodeBlock.of("$T.from(this.$$source.$N())", nestedClass.metaClassName(),
+                                property.readAccessorName())));
+            } else {
+                final CodeBlock value = CodeBlock.of("this.$$source.$N()", property.readAccessorName());
+                getter.addStatement("return $L", value);
+                toBean.addCode(beanGenerator.fieldWrite(dataClassInfo, "bean", property.name, value));
+            }
+            viewClass.addMethod(getter.build());
+        }
+        generateViewModifiers(viewClass, dataClassInfo);
+
+        viewClass.addMethod(toBean.addStatement("return bean").build());
+        viewClass.addMethod(MethodSpec.methodBuilder("with")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metaClassName.nestedClass("With"))
+                .addStatement("return this.toBean().with()")
+                .build());
+        if (beanGenerator.isFreezable(dataClassInfo)) {
+            viewClass.addMethod(MethodSpec.methodBuilder("freeze")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(metaClassName)
+                    // freezing a copy would leave this value modifiable
+                    .addStatement("throw new $T($S)", UnsupportedOperationException.class,
+                            "Only beans can be frozen")
+                    .build());
+            viewClass.addMethod(MethodSpec.methodBuilder("isFrozen")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return false")
+                    .build());
+        }
+        // value semantics of the bean without copying
+        beanGenerator.generateValueObjectMethods(viewClass, dataClassInfo);
+    }
+
+
+    /**
+     * Implements write accessors, copy-setters and unboxed accessors declared by the meta interfaces of the class
+     * and it's superclasses: write accessors throw, copy-setters return a modified bean copy
+     */
+    private void generateViewModifiers(TypeSpec.Builder viewClass, DataClassInfo dataClassInfo) {
+        final Set<String> implemented = new HashSet<>();
+        // the nearest declaration is the most specific one
+        final Deque<DataClassInfo> hierarchy = new ArrayDeque<>(Collections.singleton(dataClassInfo));
+        while (!hierarchy.isEmpty()) {
+            final DataClassInfo declaringClass = hierarchy.poll();
+            hierarchy.addAll(declaringClass.superClasses);
+            for (DataClassInfo.Property declared : declaringClass.properties) {
+                final TypeName typeName = beanGenerator.propertyTypeName(declared);
+                if (!declared.isReadOnly) {
+                    if (implemented.add(declared.writeAccessorName()))
+                        viewClass.addMethod(MethodSpec.methodBuilder(declared.writeAccessorName())
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(declaringClass.metaClassName())
+                                .addParameter(typeName, declared.name)
+                                .addStatement("throw new $T($S)", UnsupportedOperationException.class,
+                                        "Read-only view")
+                                .build());
+                } else if (!declared.isFixed && !declaringClass.isAbstract) {
+                    final String methodName = "of" + BeanGenerator.capitalize(declared.name);
+                    if (implemented.add(methodName))
+                        viewClass.addMethod(MethodSpec.methodBuilder(methodName)
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(declaringClass.metaClassName())
+                                .addParameter(typeName, declared.name)
+                                .addStatement("return this.toBean().$N($N)", methodName, declared.name)
+                                .build());
+                }
+
+                if (declared.isUnboxed && implemented.add(BeanGenerator.unboxedAccessorName(declared))) {
+                    viewClass.addMethod(MethodSpec.methodBuilder(BeanGenerator.unboxedAccessorName(declared))
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(declared.storageTypeName())
+                            .addStatement("return this.$$source.$N()", declared.readAccessorName())
+                            .build());
+                }
+            }
+        }
+    }
+}
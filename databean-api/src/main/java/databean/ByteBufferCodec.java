@@ -0,0 +1,27 @@
+package databean;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Value encoders shared by the generated XxxCodec classes
+ */
+public final class ByteBufferCodec {
+    private ByteBufferCodec() {
+    }
+
+    /**
+     * Writes the string as it's UTF-8 byte length followed by the bytes
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+package databean;
+
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Condition on the property values of a columnar container, {@link ColumnQuery#filter(ColumnPredicate)}.
+ * The predicate is bound to the column arrays once per query and then tested by row index, so rows are never
+ * materialized as beans and primitive columns are compared without boxing:
+ * <pre>
+ *     users.query().filter(greaterThan(UserMeta.age, 18)).count()
+ * </pre>
+ * Null values of boxed properties never match the comparison predicates.
+ * @param <T> meta class of the data class
+ */
+@FunctionalInterface
+public interface ColumnPredicate<T> {
+    /**
+     * Resolves the columns of the container and returns the test of a row index
+     */
+    IntPredicate bind(Columns<? extends T> columns);
+
+    default <S extends T> ColumnPredicate<S> and(ColumnPredicate<? super S> other) {
+        return columns -> bind(columns).and(other.bind(columns));
+    }
+
+    default <S extends T> ColumnPredicate<S> or(ColumnPredicate<? super S> other) {
+        return columns -> bind(columns).or(other.bind(columns));
+    }
+
+    default ColumnPredicate<T> negate() {
+        return columns -> bind(columns).negate();
+    }
+
+    static <T> ColumnPredicate<T> greaterThan(Property<T, Integer> property, int value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it > value);
+    }
+
+    static <T> ColumnPredicate<T> greaterThan(Property<T, Long> property, long value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it > value);
+    }
+
+    static <T> ColumnPredicate<T> greaterThan(Property<T, Double> property, double value) {
+        return columns -> ColumnQuery.doubleTest(columns, property, it -> it > value);
+    }
+
+    static <T> ColumnPredicate<T> lessThan(Property<T, Integer> property, int value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it < value);
+    }
+
+    static <T> ColumnPredicate<T> lessThan(Property<T, Long> property, long value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it < value);
+    }
+
+    static <T> ColumnPredicate<T> lessThan(Property<T, Double> property, double value) {
+        return columns -> ColumnQuery.doubleTest(columns, property, it -> it < value);
+    }
+
+    static <T> ColumnPredicate<T> between(Property<T, Integer> property, int from, int to) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it >= from && it <= to);
+    }
+
+    static <T> ColumnPredicate<T> between(Property<T, Long> property, long from, long to) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it >= from && it <= to);
+    }
+
+    static <T> ColumnPredicate<T> between(Property<T, Double> property, double from, double to) {
+        return columns -> ColumnQuery.doubleTest(columns, property, it -> it >= from && it <= to);
+    }
+
+    static <T> ColumnPredicate<T> equalTo(Property<T, Integer> property, int value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it == value);
+    }
+
+    static <T> ColumnPredicate<T> equalTo(Property<T, Long> property, long value) {
+        return columns -> ColumnQuery.longTest(columns, property, it -> it == value);
+    }
+
+    static <T, V> ColumnPredicate<T> equalTo(Property<T, V> property, V value) {
+        return columns -> {
+            final IntFunction<Object> values = ColumnQuery.values(columns.column(property.index()));
+            return row -> Objects.equals(values.apply(row), value);
+        };
+    }
+
+    static <T> ColumnPredicate<T> isTrue(Property<T, Boolean> property) {
+        return columns -> {
+            final Object column = columns.column(property.index());
+            if (column instanceof boolean[]) {
+                final boolean[] values = (boolean[]) column;
+                return row -> values[row];
+            }
+            final IntFunction<Object> values = ColumnQuery.values(column);
+            return row -> Boolean.TRUE.equals(values.apply(row));
+        };
+    }
+
+    static <T> ColumnPredicate<T> isNull(Property<T, ?> property) {
+        return columns -> {
+            final IntFunction<Object> values = ColumnQuery.values(columns.column(property.index()));
+            return row -> values.apply(row) == null;
+        };
+    }
+
+    /**
+     * Generic condition, values of primitive columns are boxed
+     */
+    static <T, V> ColumnPredicate<T> matches(Property<T, V> property, Predicate<? super V> condition) {
+        return columns -> {
+            final IntFunction<Object> values = ColumnQuery.values(columns.column(property.index()));
+            @SuppressWarnings("unchecked")
+            final IntPredicate test = row -> condition.test((V) values.apply(row));
+            return test;
+        };
+    }
+}
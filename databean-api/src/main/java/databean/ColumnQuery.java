@@ -0,0 +1,382 @@
+package databean;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.*;
+
+/**
+ * Parallel scan over the columns of a generated XxxColumns container:
+ * <pre>
+ *     long adults = users.query().filter(greaterThan(UserMeta.age, 18)).count();
+ *     Map&lt;String, ColumnQuery&lt;User&gt;&gt; byHobby = users.query().groupBy(UserMeta.hobby);
+ * </pre>
+ * The rows are split in chunks scanned by fork/join tasks in the common pool, each chunk tests the bound
+ * predicates and accumulates primitive columns directly, so no bean is created for any row.
+ * The container must not be modified while a query is executed. The query is immutable and may be reused.
+ * @param <T> meta class of the data class
+ */
+public final class ColumnQuery<T> {
+    /* rows scanned by a single task */
+    static final int CHUNK_SIZE = 4096;
+
+    private final Columns<T> columns;
+    /* selected row indexes in ascending order, all rows of the container if null */
+    private final int[] rows;
+    /* all selected rows match if null */
+    private final ColumnPredicate<? super T> predicate;
+
+    public ColumnQuery(Columns<T> columns) {
+        this(columns, null, null);
+    }
+
+    private ColumnQuery(Columns<T> columns, int[] rows, ColumnPredicate<? super T> predicate) {
+        this.columns = columns;
+        this.rows = rows;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Returns the query restricted to the rows matching also the predicate
+     */
+    public ColumnQuery<T> filter(ColumnPredicate<? super T> predicate) {
+        return new ColumnQuery<>(columns, rows, this.predicate == null ? predicate : this.predicate.and(predicate));
+    }
+
+    public long count() {
+        return scan((filter, from, to) -> {
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                if (filter.test(row(i)))
+                    count++;
+            }
+            return count;
+        }, Long::sum, 0L);
+    }
+
+    /**
+     * Sum of the integral property values, nulls are skipped
+     */
+    public long sum(Property<T, ? extends Number> property) {
+        final Object column = columns.column(property.index());
+        final IntToLongFunction values = longValues(column, property);
+        final IntPredicate present = present(column);
+        return scan((filter, from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                final int row = row(i);
+                if (filter.test(row) && (present == null || present.test(row)))
+                    sum += values.applyAsLong(row);
+            }
+            return sum;
+        }, Long::sum, 0L);
+    }
+
+    /**
+     * Sum of the numeric property values, nulls are skipped
+     */
+    public double sumDouble(Property<T, ? extends Number> property) {
+        return sumAndCount(property)[0];
+    }
+
+    /**
+     * Average of the numeric property values, nulls are skipped
+     */
+    public OptionalDouble average(Property<T, ? extends Number> property) {
+        final double[] sumAndCount = sumAndCount(property);
+        return sumAndCount[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of(sumAndCount[0] / sumAndCount[1]);
+    }
+
+    /**
+     * Minimal property value, nulls are skipped
+     */
+    public <V extends Comparable<? super V>> Optional<V> min(Property<T, V> property) {
+        return extreme(property, -1);
+    }
+
+    /**
+     * Maximal property value, nulls are skipped
+     */
+    public <V extends Comparable<? super V>> Optional<V> max(Property<T, V> property) {
+        return extreme(property, 1);
+    }
+
+    /**
+     * Splits the matching rows by the property value (values of primitive columns are boxed as map keys).
+     * The groups are queries over the same container which can be filtered and aggregated further.
+     */
+    public <K> Map<K, ColumnQuery<T>> groupBy(Property<T, K> property) {
+        final IntFunction<Object> values = values(columns.column(property.index()));
+        final Map<Object, RowList> groups = scan((filter, from, to) -> {
+            final Map<Object, RowList> chunkGroups = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                final int row = row(i);
+                if (filter.test(row))
+                    chunkGroups.computeIfAbsent(values.apply(row), key -> new RowList()).add(row);
+            }
+            return chunkGroups;
+        }, (left, right) -> {
+            // left chunk precedes the right one, so row indexes stay ascending
+            right.forEach((key, rowList) -> left.merge(key, rowList, RowList::addAll));
+            return left;
+        }, Collections.emptyMap());
+
+        final Map<K, ColumnQuery<T>> result = new LinkedHashMap<>();
+        groups.forEach((key, rowList) -> {
+            @SuppressWarnings("unchecked")
+            final K groupKey = (K) key;
+            result.put(groupKey, new ColumnQuery<>(columns, rowList.toArray(), null));
+        });
+        return result;
+    }
+
+    private double[] sumAndCount(Property<T, ? extends Number> property) {
+        final Object column = columns.column(property.index());
+        final IntToDoubleFunction values = doubleValues(column, property);
+        final IntPredicate present = present(column);
+        return scan((filter, from, to) -> {
+            double sum = 0;
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                final int row = row(i);
+                if (filter.test(row) && (present == null || present.test(row))) {
+                    sum += values.applyAsDouble(row);
+                    count++;
+                }
+            }
+            return new double[] {sum, count};
+        }, (left, right) -> new double[] {left[0] + right[0], left[1] + right[1]}, new double[2]);
+    }
+
+    /**
+     * Finds the row of the minimal (sign = -1) or maximal (sign = 1) value and boxes only that value
+     */
+    private <V extends Comparable<? super V>> Optional<V> extreme(Property<T, V> property, int sign) {
+        final Object column = columns.column(property.index());
+        final IntBinaryOperator comparator = comparator(column);
+        final IntPredicate present = present(column);
+        final int found = scan((filter, from, to) -> {
+            int best = -1;
+            for (int i = from; i < to; i++) {
+                final int row = row(i);
+                if (filter.test(row) && (present == null || present.test(row)) &&
+                        (best < 0 || Integer.signum(comparator.applyAsInt(row, best)) == sign))
+                    best = row;
+            }
+            return best;
+        }, (left, right) -> left < 0 || right >= 0 && Integer.signum(comparator.applyAsInt(right, left)) == sign ?
+                right : left, -1);
+        @SuppressWarnings("unchecked")
+        final V value = found < 0 ? null : (V) values(column).apply(found);
+        return Optional.ofNullable(value);
+    }
+
+    private int row(int position) {
+        return rows == null ? position : rows[position];
+    }
+
+    /**
+     * Scans the selected rows in parallel chunks and combines the chunk results
+     */
+    private <A> A scan(ChunkScan<A> chunkScan, BinaryOperator<A> combiner, A empty) {
+        final int size = rows == null ? columns.size() : rows.length;
+        if (size == 0)
+            return empty;
+        final IntPredicate filter = predicate == null ? row -> true : predicate.bind(columns);
+        if (size <= CHUNK_SIZE)
+            return chunkScan.scan(filter, 0, size);
+        return ForkJoinPool.commonPool().invoke(new ScanTask<>(chunkScan, combiner, filter, 0, size));
+    }
+
+    @FunctionalInterface
+    private interface ChunkScan<A> {
+        A scan(IntPredicate filter, int from, int to);
+    }
+
+    private static final class ScanTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final ChunkScan<A> chunkScan;
+        private final BinaryOperator<A> combiner;
+        private final IntPredicate filter;
+        private final int from;
+        private final int to;
+
+        ScanTask(ChunkScan<A> chunkScan, BinaryOperator<A> combiner, IntPredicate filter, int from, int to) {
+            this.chunkScan = chunkScan;
+            this.combiner = combiner;
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= CHUNK_SIZE)
+                return chunkScan.scan(filter, from, to);
+            final int middle = (from + to) >>> 1;
+            final ScanTask<A> left = new ScanTask<>(chunkScan, combiner, filter, from, middle);
+            left.fork();
+            final A right = new ScanTask<>(chunkScan, combiner, filter, middle, to).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+
+    /**
+     * Growable list of row indexes
+     */
+    private static final class RowList {
+        private int[] rows = new int[8];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+
+        RowList addAll(RowList other) {
+            if (size + other.size > rows.length)
+                rows = Arrays.copyOf(rows, Math.max(size + other.size, size * 2));
+            System.arraycopy(other.rows, 0, rows, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+
+    /* column access shared with ColumnPredicate */
+
+    static IntPredicate longTest(Columns<?> columns, Property<?, ?> property, LongPredicate test) {
+        final Object column = columns.column(property.index());
+        final IntToLongFunction values = longValues(column, property);
+        final IntPredicate present = present(column);
+        return present == null ?
+                row -> test.test(values.applyAsLong(row)) :
+                row -> present.test(row) && test.test(values.applyAsLong(row));
+    }
+
+    static IntPredicate doubleTest(Columns<?> columns, Property<?, ?> property, DoublePredicate test) {
+        final Object column = columns.column(property.index());
+        final IntToDoubleFunction values = doubleValues(column, property);
+        final IntPredicate present = present(column);
+        return present == null ?
+                row -> test.test(values.applyAsDouble(row)) :
+                row -> present.test(row) && test.test(values.applyAsDouble(row));
+    }
+
+    /**
+     * Null check of the object column values, null for primitive columns
+     */
+    static IntPredicate present(Object column) {
+        if (column instanceof Object[]) {
+            final Object[] values = (Object[]) column;
+            return row -> values[row] != null;
+        }
+        return null;
+    }
+
+    static IntToLongFunction longValues(Object column, Property<?, ?> property) {
+        if (column instanceof int[]) {
+            final int[] values = (int[]) column;
+            return row -> values[row];
+        } else if (column instanceof long[]) {
+            final long[] values = (long[]) column;
+            return row -> values[row];
+        } else if (column instanceof short[]) {
+            final short[] values = (short[]) column;
+            return row -> values[row];
+        } else if (column instanceof byte[]) {
+            final byte[] values = (byte[]) column;
+            return row -> values[row];
+        } else if (column instanceof char[]) {
+            final char[] values = (char[]) column;
+            return row -> values[row];
+        } else if (column instanceof Integer[] || column instanceof Long[] || column instanceof Short[] ||
+                column instanceof Byte[]) {
+            final Number[] values = (Number[]) column;
+            return row -> values[row].longValue();
+        }
+        throw new IllegalArgumentException("Not an integral property: " + property.name());
+    }
+
+    static IntToDoubleFunction doubleValues(Object column, Property<?, ?> property) {
+        if (column instanceof double[]) {
+            final double[] values = (double[]) column;
+            return row -> values[row];
+        } else if (column instanceof float[]) {
+            final float[] values = (float[]) column;
+            return row -> values[row];
+        } else if (column instanceof Number[]) {
+            final Number[] values = (Number[]) column;
+            return row -> values[row].doubleValue();
+        }
+        final IntToLongFunction values = longValues(column, property);
+        return values::applyAsLong;
+    }
+
+    /**
+     * Compares the values of two rows, nulls must be filtered out before
+     */
+    static IntBinaryOperator comparator(Object column) {
+        if (column instanceof int[]) {
+            final int[] values = (int[]) column;
+            return (a, b) -> Integer.compare(values[a], values[b]);
+        } else if (column instanceof long[]) {
+            final long[] values = (long[]) column;
+            return (a, b) -> Long.compare(values[a], values[b]);
+        } else if (column instanceof double[]) {
+            final double[] values = (double[]) column;
+            return (a, b) -> Double.compare(values[a], values[b]);
+        } else if (column instanceof Object[]) {
+            final Object[] values = (Object[]) column;
+            @SuppressWarnings("unchecked")
+            final IntBinaryOperator comparator = (a, b) -> ((Comparable<Object>) values[a]).compareTo(values[b]);
+            return comparator;
+        }
+        final IntFunction<Object> values = values(column);
+        return (a, b) -> {
+            @SuppressWarnings("unchecked")
+            final Comparable<Object> value = (Comparable<Object>) values.apply(a);
+            return value.compareTo(values.apply(b));
+        };
+    }
+
+    /**
+     * Boxing access to the column values of any type
+     */
+    static IntFunction<Object> values(Object column) {
+        if (column instanceof Object[]) {
+            final Object[] values = (Object[]) column;
+            return row -> values[row];
+        } else if (column instanceof int[]) {
+            final int[] values = (int[]) column;
+            return row -> values[row];
+        } else if (column instanceof long[]) {
+            final long[] values = (long[]) column;
+            return row -> values[row];
+        } else if (column instanceof double[]) {
+            final double[] values = (double[]) column;
+            return row -> values[row];
+        } else if (column instanceof boolean[]) {
+            final boolean[] values = (boolean[]) column;
+            return row -> values[row];
+        } else if (column instanceof float[]) {
+            final float[] values = (float[]) column;
+            return row -> values[row];
+        } else if (column instanceof short[]) {
+            final short[] values = (short[]) column;
+            return row -> values[row];
+        } else if (column instanceof byte[]) {
+            final byte[] values = (byte[]) column;
+            return row -> values[row];
+        } else if (column instanceof char[]) {
+            final char[] values = (char[]) column;
+            return row -> values[row];
+        }
+        throw new IllegalArgumentException("Not a column: " + column);
+    }
+}
@@ -0,0 +1,24 @@
+package databean;
+
+/**
+ * Struct-of-arrays container of the beans implemented by the generated XxxColumns classes.
+ * Gives {@link ColumnQuery} access to the backing column arrays.
+ * @param <T> meta class of the data class
+ */
+public interface Columns<T> {
+    int size();
+
+    /**
+     * Backing array of the property values by {@link Property#index()}: primitive array for primitive
+     * properties, object array otherwise. Elements from size() on are unused.
+     * @throws IllegalArgumentException if the property is not stored in a column
+     */
+    Object column(int index);
+
+    /**
+     * Query over all elements of the container
+     */
+    default ColumnQuery<T> query() {
+        return new ColumnQuery<>(this);
+    }
+}
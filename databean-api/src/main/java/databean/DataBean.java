@@ -0,0 +1,35 @@
+package databean;
+
+/**
+ * Implemented by all generated beans. Gives generic index-based access to bean properties.
+ * Property index is the position of the property in the generated XxxMeta.PROPERTIES list,
+ * a property keeps it's index in all beans extending the bean that declares it.
+ */
+public interface DataBean {
+    Object $get(int propertyIndex);
+
+    /**
+     * @throws UnsupportedOperationException if the property is read-only
+     */
+    void $set(int propertyIndex, Object value);
+
+    boolean $getBoolean(int propertyIndex);
+
+    int $getInt(int propertyIndex);
+
+    long $getLong(int propertyIndex);
+
+    float $getFloat(int propertyIndex);
+
+    double $getDouble(int propertyIndex);
+
+    void $setBoolean(int propertyIndex, boolean value);
+
+    void $setInt(int propertyIndex, int value);
+
+    void $setLong(int propertyIndex, long value);
+
+    void $setFloat(int propertyIndex, float value);
+
+    void $setDouble(int propertyIndex, double value);
+}
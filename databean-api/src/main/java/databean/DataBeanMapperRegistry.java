@@ -0,0 +1,62 @@
+package databean;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link CustomDataBeanMapper} backed by the factories and copiers registered per data class, extended by the
+ * generated DataBeanMapper of every package. A copier is registered for the source data interface and is used
+ * for any implementation of it, the most specific registered source wins. Data classes are registered both by
+ * the data interface and the meta interface.
+ */
+public class DataBeanMapperRegistry implements CustomDataBeanMapper {
+    private final Map<Class<?>, Supplier<?>> factories = new ConcurrentHashMap<>();
+    /* target -> source -> copier */
+    private final Map<Class<?>, Map<Class<?>, Function<Object, ?>>> copiers = new ConcurrentHashMap<>();
+    /* target -> runtime class of the object -> copier of the most specific source */
+    private final Map<Class<?>, Map<Class<?>, Function<Object, ?>>> resolved = new ConcurrentHashMap<>();
+
+    public <T> void registerFactory(Class<T> dataClass, Supplier<? extends T> factory) {
+        factories.put(dataClass, factory);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <S, T> void registerCopier(Class<S> source, Class<T> target, Function<? super S, ? extends T> copier) {
+        copiers.computeIfAbsent(target, k -> new ConcurrentHashMap<>()).put(source, (Function<Object, ?>) copier);
+        resolved.remove(target);
+    }
+
+    @Override
+    public Object create(Class<?> dataClass) {
+        final Supplier<?> factory = factories.get(dataClass);
+        if (factory == null)
+            throw new IllegalArgumentException("No factory of " + dataClass.getName());
+        return factory.get();
+    }
+
+    @Override
+    public Object copy(Object object, Class<?> dataClass) {
+        if (object == null)
+            return null;
+        final Function<Object, ?> copier = resolved.computeIfAbsent(dataClass, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(object.getClass(), it -> resolve(it, dataClass));
+        if (copier == null)
+            throw new IllegalArgumentException("No mapping of " + object.getClass().getName() + " to " +
+                    dataClass.getName());
+        return copier.apply(object);
+    }
+
+    private Function<Object, ?> resolve(Class<?> objectClass, Class<?> dataClass) {
+        final Map<Class<?>, Function<Object, ?>> sources = copiers.get(dataClass);
+        if (sources == null)
+            return null;
+        Class<?> best = null;
+        for (Class<?> source : sources.keySet()) {
+            if (source.isAssignableFrom(objectClass) && (best == null || best.isAssignableFrom(source)))
+                best = source;
+        }
+        return best != null ? sources.get(best) : null;
+    }
+}
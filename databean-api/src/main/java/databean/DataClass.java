@@ -22,4 +22,67 @@ public @interface DataClass {
      * Abstract data class can not have instances
      */
     boolean isAbstract() default false;
+
+    /**
+     * Generated bean computes it's hashCode once and caches it. The hash is carried to the copies made by ofXXX()
+     * methods. Allowed only for data classes with all properties read-only.
+     */
+    boolean cacheHashCode() default false;
+
+    /**
+     * All non-null properties of boxed types are stored in primitive fields like they were marked with @Unboxed
+     */
+    boolean unboxed() default false;
+
+    /**
+     * Generated bean packs boolean properties into int/long bit fields and declares other fields ordered by size
+     */
+    boolean compactLayout() default false;
+
+    /**
+     * Generated bean setters mark the changed properties in a dirty bit mask: $dirtyMask() returns long or long[]
+     * for more than 64 properties, $clearDirty() resets it and $copyDirtyTo(target) applies the changes to another
+     * bean. The mode is inherited by the bean subclasses.
+     */
+    boolean trackChanges() default false;
+
+    /**
+     * All properties of reference types with default values are initialized on the first read like they were
+     * marked with @Lazy
+     */
+    boolean lazyDefaults() default false;
+
+    /**
+     * of(...) methods return canonical instances of Xxx.intern(value), so equal values share one instance.
+     * Allowed only for data classes with all properties read-only and nested data classes immutable as well.
+     */
+    boolean intern() default false;
+
+    /**
+     * Generated bean fields are volatile and mutable properties of int, long and reference types get atomic
+     * compareAndSetXxx(expect, value), updateXxx(operator) and for numbers getAndAddXxx(delta) methods. Can not be
+     * combined with compactLayout, trackChanges, lazy or indexed properties. The mode is inherited by the bean
+     * subclasses.
+     */
+    boolean concurrent() default false;
+
+    /**
+     * Generated bean gets freeze(): setters of a frozen bean throw UnsupportedOperationException, nested data class
+     * values are frozen as well, so the bean may be shared read-only. Nested data classes must be freezable or
+     * immutable. The mode is inherited by the bean subclasses.
+     * <p>
+     * Nested beans are shared by the shallow copies made by with(), ofXxx() and path copies, so freezing the
+     * source makes them unmodifiable in the copies too: deepCopy() the source first to keep the copies
+     * modifiable. Only beans can be frozen, freeze() of views, records and cursors throws
+     * UnsupportedOperationException.
+     */
+    boolean freezable() default false;
+
+    /**
+     * Data interfaces that the generated DataBeanMapper maps to and from this data class by property names, the
+     * pair is declared by one of the classes. Nested data classes of the mapped properties are mapped as well.
+     * DataBeanMapper of a package is generated from the data classes compiled together, so incremental compilation
+     * of a part of the package drops the mappings of the other data classes.
+     */
+    Class<?>[] mappedWith() default {};
 }
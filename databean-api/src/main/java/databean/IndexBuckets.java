@@ -0,0 +1,65 @@
+package databean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lists of the values sharing a key in the hash index tables. A bucket is an array with the count of used
+ * elements kept by the table, values are compared by identity and stay in the insertion order.
+ */
+final class IndexBuckets {
+    private IndexBuckets() {
+    }
+
+    static Object[] add(Object[] bucket, int count, Object value) {
+        if (bucket == null)
+            bucket = new Object[2];
+        else if (count == bucket.length)
+            bucket = Arrays.copyOf(bucket, count * 2);
+        bucket[count] = value;
+        return bucket;
+    }
+
+    /**
+     * Removes the value from the bucket and returns true if it was found
+     */
+    static boolean remove(Object[] bucket, int count, Object value) {
+        for (int i = 0; i < count; i++) {
+            if (bucket[i] == value) {
+                System.arraycopy(bucket, i + 1, bucket, i, count - i - 1);
+                bucket[count - 1] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> List<T> toList(Object[] bucket, int count) {
+        if (count == 0)
+            return Collections.emptyList();
+        final List<T> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            list.add((T) bucket[i]);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> void forEach(Object[] bucket, int count, Consumer<? super T> action) {
+        for (int i = 0; i < count; i++)
+            action.accept((T) bucket[i]);
+    }
+
+    /**
+     * Table capacity: power of two keeping the load factor at most 1/2
+     */
+    static int capacity(int expectedKeys) {
+        int capacity = 16;
+        while (capacity < expectedKeys * 2)
+            capacity <<= 1;
+        return capacity;
+    }
+}
@@ -0,0 +1,14 @@
+package databean;
+
+/**
+ * Index notified by the bean setters on the indexed property changes, implemented by the generated XxxIndex
+ * classes. The property is identified by it's {@link Property#index()}, values of integral properties are
+ * passed without boxing.
+ */
+public interface IndexListener {
+    void changed(Object bean, int property, int oldValue, int newValue);
+
+    void changed(Object bean, int property, long oldValue, long newValue);
+
+    void changed(Object bean, int property, Object oldValue, Object newValue);
+}
@@ -0,0 +1,15 @@
+package databean;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indexed properties get a hash index of the beans by the property value in the generated XxxIndex class.
+ * Setters of the beans registered in an index update it on property changes.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.CLASS)
+public @interface Indexed {
+}
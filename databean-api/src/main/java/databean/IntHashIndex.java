@@ -0,0 +1,142 @@
+package databean;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hash multimap from int keys to values, used by the generated XxxIndex classes.
+ * Open addressing table with linear probing keeps the keys in a primitive array, so keys are never boxed.
+ * Values of a key are compared by identity and returned in insertion order. The index is not thread-safe.
+ * @param <T> value type
+ */
+public final class IntHashIndex<T> {
+    private int[] keys;
+    /* values of the key at the same slot, null for a free slot */
+    private Object[][] buckets;
+    private int[] counts;
+    private int keyCount;
+    private int valueCount;
+
+    public IntHashIndex() {
+        this(0);
+    }
+
+    public IntHashIndex(int expectedKeys) {
+        final int capacity = IndexBuckets.capacity(expectedKeys);
+        this.keys = new int[capacity];
+        this.buckets = new Object[capacity][];
+        this.counts = new int[capacity];
+    }
+
+    public void add(int key, T value) {
+        int slot = slot(key);
+        if (buckets[slot] == null) {
+            if ((keyCount + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            keyCount++;
+        }
+        buckets[slot] = IndexBuckets.add(buckets[slot], counts[slot], value);
+        counts[slot]++;
+        valueCount++;
+    }
+
+    /**
+     * Removes the value from the key and returns true if it was found
+     */
+    public boolean remove(int key, T value) {
+        final int slot = slot(key);
+        if (buckets[slot] == null || !IndexBuckets.remove(buckets[slot], counts[slot], value))
+            return false;
+        valueCount--;
+        if (--counts[slot] == 0)
+            removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Values of the key copied to a new list
+     */
+    public List<T> get(int key) {
+        final int slot = slot(key);
+        return IndexBuckets.toList(buckets[slot], counts[slot]);
+    }
+
+    public void forEach(int key, Consumer<? super T> action) {
+        final int slot = slot(key);
+        IndexBuckets.forEach(buckets[slot], counts[slot], action);
+    }
+
+    public int count(int key) {
+        return counts[slot(key)];
+    }
+
+    /**
+     * Number of distinct keys
+     */
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Number of values of all keys
+     */
+    public int size() {
+        return valueCount;
+    }
+
+    /**
+     * Slot of the key or the free slot where it must be added
+     */
+    private int slot(int key) {
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (buckets[slot] != null && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Frees the slot moving back the following entries of the probe sequence, no tombstones are left
+     */
+    private void removeSlot(int slot) {
+        final int mask = keys.length - 1;
+        int free = slot;
+        for (int i = (slot + 1) & mask; buckets[i] != null; i = (i + 1) & mask) {
+            // the entry can be moved if the free slot is between it's home slot and the current one
+            if (((i - (hash(keys[i]) & mask)) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                buckets[free] = buckets[i];
+                counts[free] = counts[i];
+                free = i;
+            }
+        }
+        buckets[free] = null;
+        counts[free] = 0;
+        keyCount--;
+    }
+
+    private void resize(int capacity) {
+        final int[] oldKeys = keys;
+        final Object[][] oldBuckets = buckets;
+        final int[] oldCounts = counts;
+        keys = new int[capacity];
+        buckets = new Object[capacity][];
+        counts = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldBuckets[i] != null) {
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                buckets[slot] = oldBuckets[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        final int hash = key * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,81 @@
+package databean;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent canonicalizing table of immutable values compared by equals()/hashCode(), used by the generated
+ * Xxx.intern(value) methods. Values are weakly referenced, so the canonical instances no longer used elsewhere
+ * are collected and their entries are removed on later calls.
+ * @param <T> type of the values
+ */
+public final class Interner<T> {
+    private final ConcurrentHashMap<Entry<T>, Entry<T>> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
+    /**
+     * Returns the canonical instance equal to the value, the value becomes canonical if there is none
+     */
+    public T intern(T value) {
+        Objects.requireNonNull(value, "value");
+        expungeStaleEntries();
+        final Entry<T> entry = new Entry<>(value, queue);
+        for (;;) {
+            final Entry<T> existing = table.putIfAbsent(entry, entry);
+            if (existing == null)
+                return value;
+            final T canonical = existing.get();
+            if (canonical != null) {
+                // not enqueued when the value is collected
+                entry.clear();
+                return canonical;
+            }
+            // collected canonical value that is not expunged yet
+            table.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Number of the entries including the values collected since the last call
+     */
+    public int size() {
+        expungeStaleEntries();
+        return table.size();
+    }
+
+    private void expungeStaleEntries() {
+        for (Object stale; (stale = queue.poll()) != null; ) {
+            @SuppressWarnings("unchecked")
+            final Entry<T> entry = (Entry<T>) stale;
+            table.remove(entry, entry);
+        }
+    }
+
+
+    private static final class Entry<T> extends WeakReference<T> {
+        private final int hash;
+
+        Entry(T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.hash = value.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Entries of equal values are equal, an entry of a collected value is equal only to itself
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Entry) || hash != ((Entry<?>) o).hash) return false;
+            final T value = get();
+            return value != null && value.equals(((Entry<?>) o).get());
+        }
+    }
+}
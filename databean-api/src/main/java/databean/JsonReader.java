@@ -0,0 +1,385 @@
+package databean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal buffered streaming UTF-8 JSON reader used by the generated XxxJson classes.
+ * Property names are not materialized as strings: generated code dispatches by {@link #nextNameHash()}
+ * and confirms the match with {@link #nameEquals(byte[])}.
+ * Malformed input is reported with IllegalArgumentException.
+ */
+public final class JsonReader {
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    private long offset;
+
+    /* bytes of the last read string or property name */
+    private byte[] chars = new byte[64];
+    private int charsLength;
+
+    /* whether a property is already read from each of the objects being read, innermost last */
+    private boolean[] members = new boolean[16];
+    private int depth;
+
+    public JsonReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Hash of the property name computed over it's UTF-8 bytes as it is done by {@link #nextNameHash()}
+     */
+    public static int nameHash(String name) {
+        int hash = 0;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8))
+            hash = 31 * hash + (b & 0xff);
+        return hash;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+        if (depth == members.length)
+            members = Arrays.copyOf(members, depth * 2);
+        members[depth++] = false;
+    }
+
+    /**
+     * Returns true if the current object has another property, consumes the closing brace otherwise.
+     * Properties are separated by exactly one comma.
+     */
+    public boolean hasNext() throws IOException {
+        if (depth == 0)
+            throw error("object expected");
+        int c = peek();
+        if (c == '}') {
+            position++;
+            depth--;
+            return false;
+        }
+        if (members[depth - 1]) {
+            expect(',');
+            c = peek();
+        }
+        if (c != '"')
+            throw error("property name expected");
+        members[depth - 1] = true;
+        return true;
+    }
+
+    /**
+     * Reads the property name with the following colon and returns it's hash
+     */
+    public int nextNameHash() throws IOException {
+        readString();
+        expect(':');
+        int hash = 0;
+        for (int i = 0; i < charsLength; i++)
+            hash = 31 * hash + (chars[i] & 0xff);
+        return hash;
+    }
+
+    /**
+     * Checks if the last read property name is the one precomputed by {@link JsonWriter#name(String)}
+     */
+    public boolean nameEquals(byte[] name) {
+        if (charsLength != name.length - 3)
+            return false;
+        for (int i = 0; i < charsLength; i++) {
+            if (chars[i] != name[i + 1])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Consumes null literal if it is the next value
+     */
+    public boolean nextNull() throws IOException {
+        if (peek() != 'n')
+            return false;
+        expectLiteral("null");
+        return true;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peek() == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    public int nextInt() throws IOException {
+        final long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw error("int value expected");
+        return (int) value;
+    }
+
+    public long nextLong() throws IOException {
+        int c = peek();
+        final boolean negative = c == '-';
+        if (negative)
+            position++;
+        c = read();
+        if (c < '0' || c > '9')
+            throw error("number expected");
+        if (c == '0' && fill(1) && buffer[position] >= '0' && buffer[position] <= '9')
+            throw error("leading zero");
+        // accumulated as negative value to fit Long.MIN_VALUE
+        long value = 0;
+        while (true) {
+            final int digit = c - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10)
+                throw error("long value overflow");
+            value = value * 10 - digit;
+            if (!fill(1) || buffer[position] < '0' || buffer[position] > '9')
+                break;
+            c = buffer[position++];
+        }
+        if (fill(1) && (buffer[position] == '.' || buffer[position] == 'e' || buffer[position] == 'E'))
+            throw error("integer value expected");
+        if (!negative) {
+            if (value == Long.MIN_VALUE)
+                throw error("long value overflow");
+            value = -value;
+        }
+        return value;
+    }
+
+    public float nextFloat() throws IOException {
+        return Float.parseFloat(nextNumber());
+    }
+
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(nextNumber());
+    }
+
+    public char nextChar() throws IOException {
+        final String value = nextString();
+        if (value.length() != 1)
+            throw error("single character string expected");
+        return value.charAt(0);
+    }
+
+    public String nextString() throws IOException {
+        readString();
+        return new String(chars, 0, charsLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips the next value of any type
+     */
+    public void skipValue() throws IOException {
+        final int c = peek();
+        switch (c) {
+            case '"':
+                readString();
+                break;
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    readString();
+                    expect(':');
+                    skipValue();
+                }
+                break;
+            case '[':
+                position++;
+                if (peek() == ']') {
+                    position++;
+                    break;
+                }
+                while (true) {
+                    skipValue();
+                    if (peek() == ',') {
+                        position++;
+                    } else {
+                        expect(']');
+                        break;
+                    }
+                }
+                break;
+            case 't':
+            case 'f':
+                nextBoolean();
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                nextNumber();
+        }
+    }
+
+    public IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Malformed JSON at " + (offset + position) + ": " + message);
+    }
+
+    private String nextNumber() throws IOException {
+        peek();
+        final StringBuilder sb = new StringBuilder();
+        while (fill(1)) {
+            final byte c = buffer[position];
+            if (c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                sb.append((char) c);
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (sb.length() == 0)
+            throw error("number expected");
+        final int start = sb.charAt(0) == '-' ? 1 : 0;
+        if (sb.length() > start + 1 && sb.charAt(start) == '0' && sb.charAt(start + 1) >= '0' &&
+                sb.charAt(start + 1) <= '9')
+            throw error("leading zero");
+        return sb.toString();
+    }
+
+    /**
+     * Reads the quoted string into chars buffer unescaping it
+     */
+    private void readString() throws IOException {
+        expect('"');
+        charsLength = 0;
+        while (true) {
+            int c = read();
+            if (c == '"')
+                return;
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b': appendChar('\b'); break;
+                    case 'f': appendChar('\f'); break;
+                    case 'n': appendChar('\n'); break;
+                    case 'r': appendChar('\r'); break;
+                    case 't': appendChar('\t'); break;
+                    case 'u':
+                        int codePoint = readHex();
+                        while (Character.isHighSurrogate((char) codePoint) && fill(2) &&
+                                buffer[position] == '\\' && buffer[position + 1] == 'u') {
+                            position += 2;
+                            final int next = readHex();
+                            if (Character.isLowSurrogate((char) next)) {
+                                codePoint = Character.toCodePoint((char) codePoint, (char) next);
+                                break;
+                            }
+                            // unpaired high surrogate, the next code unit is decoded on it's own
+                            appendChar('?');
+                            codePoint = next;
+                        }
+                        appendCodePoint(Character.isSurrogate((char) codePoint) ? '?' : codePoint);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        appendChar((char) c);
+                        break;
+                    default:
+                        throw error("invalid escape sequence");
+                }
+            } else if (c < 0x20) {
+                throw error("unescaped control character");
+            } else {
+                appendChar((char) c);
+            }
+        }
+    }
+
+    private int readHex() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int c = read();
+            final int digit = Character.digit(c, 16);
+            if (digit < 0)
+                throw error("hex digit expected");
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendChar((char) codePoint);
+        } else if (codePoint < 0x800) {
+            appendChar((char) (0xc0 | codePoint >> 6));
+            appendChar((char) (0x80 | codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            appendChar((char) (0xe0 | codePoint >> 12));
+            appendChar((char) (0x80 | codePoint >> 6 & 0x3f));
+            appendChar((char) (0x80 | codePoint & 0x3f));
+        } else {
+            appendChar((char) (0xf0 | codePoint >> 18));
+            appendChar((char) (0x80 | codePoint >> 12 & 0x3f));
+            appendChar((char) (0x80 | codePoint >> 6 & 0x3f));
+            appendChar((char) (0x80 | codePoint & 0x3f));
+        }
+    }
+
+    /**
+     * Appends a raw byte value to chars buffer
+     */
+    private void appendChar(char b) {
+        if (charsLength == chars.length)
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        chars[charsLength++] = (byte) b;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected)
+            throw error("'" + expected + "' expected");
+        position++;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        peek();
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i))
+                throw error(literal + " expected");
+        }
+    }
+
+    /**
+     * Skips whitespace and returns the next byte without consuming it
+     */
+    private int peek() throws IOException {
+        while (fill(1)) {
+            final byte c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+            position++;
+        }
+        throw error("unexpected end of input");
+    }
+
+    private int read() throws IOException {
+        if (!fill(1))
+            throw error("unexpected end of input");
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Ensures there are at least count bytes available in the buffer
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count)
+            return true;
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        offset += position;
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            final int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                return false;
+            limit += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package databean;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Default value of the property is evaluated on the first read instead of the bean construction.
+ * A presence bit of the bean tells whether the field is set, so null values of nullable properties are kept.
+ * Only the getters set the default, equals(), hashCode(), toString() and serialization use the default value
+ * without setting it.
+ * Allowed for properties of reference types with a default value or automatically initialized non-null values.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.CLASS)
+public @interface Lazy {
+}
@@ -0,0 +1,137 @@
+package databean;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only store of fixed-width records in a memory-mapped file. Records are read through flyweight views,
+ * so reading and scanning allocate nothing per record.
+ * <p>
+ * The file starts with a header (record count, record size, records per segment) followed by segments
+ * mapped on demand, a record never crosses a segment boundary. Values are stored in little-endian order.
+ * The store is not thread-safe.
+ * @param <T> meta class of the data class
+ */
+public final class MappedRecordStore<T> implements Closeable {
+    private static final int HEADER_SIZE = 16;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final RecordLayout<T> layout;
+    private final int recordSize;
+    private final int recordsPerSegment;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long count;
+
+    public MappedRecordStore(Path path, RecordLayout<T> layout) throws IOException {
+        this(path, layout, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize size in bytes of a file region mapped at once, it is used only when a new file is created
+     */
+    public MappedRecordStore(Path path, RecordLayout<T> layout, int segmentSize) throws IOException {
+        this.layout = layout;
+        this.recordSize = layout.size();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            final boolean created = channel.size() == 0;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                header.putLong(0, 0);
+                header.putInt(8, recordSize);
+                header.putInt(12, Math.max(1, segmentSize / recordSize));
+            } else if (header.getInt(8) != recordSize) {
+                throw new IllegalArgumentException("Record size " + header.getInt(8) + " of the file " + path +
+                        " does not match the layout record size " + recordSize);
+            }
+            this.count = header.getLong(0);
+            this.recordsPerSegment = header.getInt(12);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Appends the value and returns it's record index
+     */
+    public long append(T value) throws IOException {
+        final long index = count;
+        layout.write(segment(index), recordOffset(index), value);
+        count = index + 1;
+        header.putLong(0, count);
+        return index;
+    }
+
+    /**
+     * Moves the view to the record and returns it
+     */
+    public T read(long index, RecordView<T> view) throws IOException {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Record index: " + index + ", size: " + count);
+        return view.wrap(segment(index), recordOffset(index));
+    }
+
+    public RecordView<T> newView() {
+        return layout.newView();
+    }
+
+    /**
+     * Passes all records to the action in order through a single view
+     */
+    public void forEach(Consumer<? super T> action) throws IOException {
+        final RecordView<T> view = layout.newView();
+        for (long index = 0; index < count; index += recordsPerSegment) {
+            final MappedByteBuffer segment = segment(index);
+            final int segmentCount = (int) Math.min(recordsPerSegment, count - index);
+            for (int i = 0; i < segmentCount; i++)
+                action.accept(view.wrap(segment, i * recordSize));
+        }
+    }
+
+    /**
+     * Writes the changes of the mapped regions to the file
+     */
+    public void flush() {
+        segments.forEach(MappedByteBuffer::force);
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long index) throws IOException {
+        final int segmentIndex = (int) (index / recordsPerSegment);
+        while (segments.size() <= segmentIndex) {
+            final long segmentBytes = (long) recordsPerSegment * recordSize;
+            final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + segments.size() * segmentBytes, segmentBytes);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+        }
+        return segments.get(segmentIndex);
+    }
+
+    private int recordOffset(long index) {
+        return (int) (index % recordsPerSegment) * recordSize;
+    }
+}
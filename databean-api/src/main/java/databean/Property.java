@@ -0,0 +1,92 @@
+package databean;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Statically generated property descriptor of a data class: UserMeta.name : Property&lt;User, String&gt;.
+ * Accesses the property value through the generated accessors without using reflection.
+ * @param <T> meta class of the data class
+ * @param <V> property value type (boxed for primitives)
+ */
+public final class Property<T, V> {
+    private final int index;
+    private final String name;
+    private final Class<?> type;
+    private final boolean initial;
+    private final boolean readOnly;
+    private final boolean fixed;
+    private final boolean nonNull;
+    private final Function<T, V> getter;
+    private final BiConsumer<T, V> setter;
+
+    public Property(int index, String name, Class<?> type, boolean initial, boolean readOnly, boolean fixed, boolean nonNull,
+                    Function<T, V> getter, BiConsumer<T, V> setter)
+    {
+        this.index = index;
+        this.name = name;
+        this.type = type;
+        this.initial = initial;
+        this.readOnly = readOnly;
+        this.fixed = fixed;
+        this.nonNull = nonNull;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * Position in XxxMeta.PROPERTIES used by DataBean's index-based accessors
+     */
+    public int index() {
+        return index;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Declared type of the property (primitive class for primitive properties, raw class for generic types)
+     */
+    public Class<?> type() {
+        return type;
+    }
+
+    public boolean isInitial() {
+        return initial;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    public boolean isNonNull() {
+        return nonNull;
+    }
+
+    public V get(T bean) {
+        return getter.apply(bean);
+    }
+
+    /**
+     * Changes the value of a mutable property
+     * @throws UnsupportedOperationException if the property is read-only
+     */
+    public void set(T bean, V value) {
+        if (setter == null)
+            throw new UnsupportedOperationException("Read-only property: " + name);
+        setter.accept(bean, value);
+    }
+
+    @Override
+    public String toString() {
+        return "Property{" +
+                "name='" + name + '\'' +
+                ", type=" + type.getName() +
+                '}';
+    }
+}
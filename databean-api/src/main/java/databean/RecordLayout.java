@@ -0,0 +1,25 @@
+package databean;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width binary layout of a data class generated for data classes made only of primitives
+ * and nested primitive data classes
+ * @param <T> meta class of the data class
+ */
+public interface RecordLayout<T> {
+    /**
+     * Record size in bytes
+     */
+    int size();
+
+    /**
+     * Writes the value at the absolute offset of the buffer
+     */
+    void write(ByteBuffer buffer, int offset, T value);
+
+    /**
+     * Creates a new flyweight view
+     */
+    RecordView<T> newView();
+}
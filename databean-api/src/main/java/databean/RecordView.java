@@ -0,0 +1,15 @@
+package databean;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight that implements the meta class over a record stored in a buffer.
+ * The view is reused for different records, so the values must be copied with toBean() to be kept.
+ * @param <T> meta class of the data class
+ */
+public interface RecordView<T> {
+    /**
+     * Moves the view to the record at the absolute offset of the buffer and returns itself
+     */
+    T wrap(ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,15 @@
+package databean;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Non-null property of boxed type (Integer, Long, Boolean...) is stored in a primitive field.
+ * The value is boxed only by the interface getter. An unboxed accessor (ageAsInt()) is also generated.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.CLASS)
+public @interface Unboxed {
+}
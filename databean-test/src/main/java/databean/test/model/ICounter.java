@@ -0,0 +1,15 @@
+package databean.test.model;
+
+import databean.DataClass;
+
+import javax.annotation.Nonnull;
+
+/** shared by the threads until it is frozen and published */
+@DataClass(concurrent = true, freezable = true)
+public interface ICounter {
+    int hits();
+    long total();
+
+    @Nonnull
+    String label();
+}
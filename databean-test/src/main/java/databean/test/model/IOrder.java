@@ -0,0 +1,50 @@
+package databean.test.model;
+
+import databean.DataClass;
+import databean.Initial;
+import databean.Lazy;
+import databean.ReadOnly;
+
+import javax.annotation.Nonnull;
+
+@DataClass(freezable = true)
+public interface IOrder {
+    @Initial @ReadOnly @Nonnull
+    String id();
+
+    boolean paid();
+
+    /** materialized by freeze(), so a frozen order is never written */
+    @Lazy
+    default String note() {
+        return "none";
+    }
+
+    /** frozen with the order */
+    IShipping shipping();
+
+    /** immutable, shared by the frozen order as it is */
+    IItem item();
+
+    @DataClass(freezable = true)
+    interface IShipping {
+        String carrier();
+
+        @Nonnull
+        IDestination destination();
+
+        @DataClass(freezable = true)
+        interface IDestination {
+            String street();
+            String city();
+        }
+    }
+
+    @DataClass
+    interface IItem {
+        @Initial @ReadOnly @Nonnull
+        String name();
+        @Initial @ReadOnly
+        int quantity();
+    }
+}
@@ -0,0 +1,27 @@
+package databean.test.model;
+
+import databean.DataClass;
+import databean.Initial;
+import databean.ReadOnly;
+
+import javax.annotation.Nonnull;
+
+/** shares the properties with IUser, mapped by the generated DataBeanMapper */
+@DataClass(mappedWith = IUser.class)
+public interface IPerson {
+    @Initial @ReadOnly @Nonnull
+    String name();
+
+    int age();
+
+    IContact contact();
+
+    String email();
+
+    @DataClass
+    interface IBirthInfo {
+        String place();
+    }
+
+    IBirthInfo birthInfo();
+}
@@ -0,0 +1,16 @@
+package databean.test.model;
+
+import databean.DataClass;
+import databean.Indexed;
+import javax.annotation.Nonnull;
+
+@DataClass(trackChanges = true)
+public interface IProduct {
+    @Indexed
+    int category();
+    @Indexed @Nonnull
+    String name();
+    @Indexed
+    long stock();
+    double price();
+}
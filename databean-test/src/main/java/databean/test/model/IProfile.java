@@ -0,0 +1,22 @@
+package databean.test.model;
+
+import databean.DataClass;
+import databean.Initial;
+import databean.ReadOnly;
+
+import javax.annotation.Nonnull;
+
+@DataClass(lazyDefaults = true)
+public interface IProfile {
+    @Initial @ReadOnly @Nonnull
+    String login();
+
+    /** default value is set on the first read */
+    default String hobby() {
+        return "unknown";
+    }
+
+    /** created on the first read */
+    @Nonnull
+    IAddress address();
+}
@@ -0,0 +1,25 @@
+package databean.test.model;
+
+import databean.DataClass;
+import databean.Initial;
+import databean.ReadOnly;
+
+import javax.annotation.Nonnull;
+
+@DataClass(concurrent = true)
+public interface ISession {
+    @Initial @ReadOnly @Nonnull
+    String id();
+
+    /** counters shared by the request threads */
+    int requests();
+    long bytes();
+
+    @Nonnull
+    String lastPath();
+
+    IAddress address();
+
+    /** volatile only: no atomic methods for doubles */
+    double load();
+}
@@ -0,0 +1,8 @@
+package databean.test.model;
+
+import databean.DataClass;
+
+@DataClass
+public interface ITruck extends IVehicle {
+    int load();
+}
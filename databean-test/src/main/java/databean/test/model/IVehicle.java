@@ -0,0 +1,10 @@
+package databean.test.model;
+
+import databean.DataClass;
+
+/** change tracking is inherited by ITruck */
+@DataClass(trackChanges = true)
+public interface IVehicle {
+    String plate();
+    int speed();
+}
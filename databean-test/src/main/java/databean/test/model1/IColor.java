@@ -0,0 +1,15 @@
+package databean.test.model1;
+
+import databean.DataClass;
+import databean.Initial;
+import databean.ReadOnly;
+
+@DataClass(intern = true)
+public interface IColor {
+    @Initial @ReadOnly
+    int red();
+    @Initial @ReadOnly
+    int green();
+    @Initial @ReadOnly
+    int blue();
+}
@@ -4,7 +4,7 @@ import databean.DataClass;
 import databean.Initial;
 import databean.ReadOnly;
 
-@DataClass
+@DataClass(cacheHashCode = true)
 public interface IDimension {
     @Initial @ReadOnly
     int width();
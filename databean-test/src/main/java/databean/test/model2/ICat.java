@@ -6,7 +6,7 @@ import databean.ReadOnly;
 
 import javax.annotation.Nonnull;
 
-@DataClass
+@DataClass(compactLayout = true)
 public interface ICat extends IPet {
     @Fixed @Override @Nonnull
     default String type() {
@@ -4,10 +4,11 @@ import databean.DataClass;
 import databean.DefaultValue;
 import databean.Fixed;
 import databean.ReadOnly;
+import databean.Unboxed;
 
 import javax.annotation.Nonnull;
 
-@DataClass
+@DataClass(compactLayout = true)
 public interface IDog extends IPet {
     @Fixed @Override @Nonnull
     default String type() {
@@ -23,9 +24,13 @@ public interface IDog extends IPet {
     String race();
 
     // default value generation: always false
-    @ReadOnly @Nonnull
+    @ReadOnly @Nonnull @Unboxed
     Boolean hasHorn();
 
     @ReadOnly @DefaultValue("true")
     boolean hasTail();
+
+    // stored in primitive field
+    @ReadOnly @Nonnull @Unboxed @DefaultValue("4")
+    Integer legs();
 }
@@ -0,0 +1,11 @@
+package databean.test.model2;
+
+import databean.DataClass;
+
+@DataClass
+public interface IShelter {
+    String city();
+
+    // nested value of the abstract data class
+    IPet pet();
+}
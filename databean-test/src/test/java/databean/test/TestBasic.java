@@ -1,13 +1,54 @@
 package databean.test;
 
+import databean.ColumnQuery;
+import databean.DataBean;
+import databean.JsonReader;
+import databean.JsonWriter;
+import databean.MappedRecordStore;
+import databean.RecordView;
 import databean.test.model.*;
+import databean.test.model1.Color;
+import databean.test.model1.ColorDiff;
+import databean.test.model1.Dimension;
+import databean.test.model1.Point;
+import databean.test.model1.PointDiff;
+import databean.test.model1.Rectangle;
+import databean.test.model1.RectangleCodec;
+import databean.test.model1.RectangleRecord;
 import databean.test.model2.Cat;
+import databean.test.model2.CatCodec;
+import databean.test.model2.CatMeta;
+import databean.test.model2.CatView;
 import databean.test.model2.Felix;
+import databean.test.model2.FelixColumns;
+import databean.test.model2.FelixCodec;
+import databean.test.model2.FelixDiff;
+import databean.test.model2.FelixJson;
+import databean.test.model2.FelixMeta;
+import databean.test.model2.FelixView;
+import databean.test.model2.ICat;
+import databean.test.model2.IPet;
+import databean.test.model2.IShelter;
+import databean.test.model2.Shelter;
+import databean.test.model2.ShelterView;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
+import static databean.ColumnPredicate.*;
 import static org.junit.Assert.*;
 
 public class TestBasic {
@@ -57,6 +98,932 @@ public class TestBasic {
         assertEquals("Coopertown", pedro.birthInfo().place());
     }
 
+    @Test
+    public void testCopyWith() {
+        final User pedro = User.of(21, "Pedro").hobby("chess");
+        final User silvia = pedro.with()
+                .name("Silvia")
+                .age(30)
+                .hobby("tennis")
+                .build();
+        assertNotSame(pedro, silvia);
+        assertEquals("Silvia", silvia.name());
+        assertEquals(30, silvia.age());
+        assertEquals("tennis", silvia.hobby());
+        // source is not modified
+        assertEquals("Pedro", pedro.name());
+        assertEquals("chess", pedro.hobby());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testCopyWithNulls() {
+        User.of(21, "Pedro").with().name(null);
+    }
+
+    @Test
+    public void testEqualsHashCode() {
+        final User pedro1 = User.of(21, "Pedro").contact(Contact.of().phone("555123456"));
+        final User pedro2 = User.of(21, "Pedro").contact(Contact.of().phone("555123456"));
+        assertEquals(pedro1, pedro2);
+        assertEquals(pedro1.hashCode(), pedro2.hashCode());
+        assertNotEquals(pedro1, pedro2.ofAge(22));
+        assertNotEquals(pedro1, pedro2.active(false));
+
+        // inherited fields are compared by bean superclass
+        assertEquals(Felix.of(), Felix.of());
+        assertEquals(Felix.of().hashCode(), Felix.of().hashCode());
+        assertNotEquals(Felix.of(), Felix.of().age(7));
+        assertNotEquals(Cat.of("Tom"), Cat.of("Tom").ofCutie(true));
+    }
+
+    @Test
+    public void testCachedHashCode() {
+        final Point point = Point.of(3, 4);
+        final int hash = point.hashCode();
+        assertEquals(hash, point.hashCode());
+        assertEquals(Point.of(3, 4).hashCode(), hash);
+        // hash carried to the copy must be the same as calculated one
+        assertEquals(Point.of(7, 4).hashCode(), point.ofX(7).hashCode());
+        assertEquals(Point.of(3, -1).hashCode(), point.ofY(-1).hashCode());
+        assertEquals(Point.of(3, -1), point.ofY(-1));
+
+        final Rectangle rectangle = Rectangle.of(point, Dimension.of(10, 20));
+        rectangle.hashCode();
+        final Rectangle moved = rectangle.ofPoint(Point.of(0, 0));
+        assertEquals(Rectangle.of(Point.of(0, 0), Dimension.of(10, 20)).hashCode(), moved.hashCode());
+    }
+
+    @Test
+    public void testIntern() {
+        final Color red = Color.of(255, 0, 0);
+        assertSame(red, Color.of(255, 0, 0));
+        assertNotSame(red, Color.of(0, 0, 255));
+        // copies are not interned until asked
+        final Color copy = Color.of(0, 0, 0).ofRed(255);
+        assertNotSame(red, copy);
+        assertSame(red, Color.intern(copy));
+
+        // values of other immutable classes are interned explicitly
+        final Point point = Point.of(3, 4);
+        assertNotSame(point, Point.of(3, 4));
+        assertSame(point, Point.intern(point));
+        assertSame(point, Point.intern(Point.of(3, 4)));
+        final Dimension size = Dimension.of(10, 20);
+        assertSame(Rectangle.intern(Rectangle.of(point, size)), Rectangle.intern(Rectangle.of(3, 4, 10, 20)));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("Address{street=Mayor, city=Madrid}",
+                Address.of().street("Mayor").city("Madrid").toString());
+        assertEquals("Felix{type=Cat, name=Felix, age=5, sound=Murrraaayy, weight=5.5, cutie=true, color=ginger}",
+                Felix.of().toString());
+    }
+
+    @Test
+    public void testPropertyMetadata() {
+        final User user = User.of().age(30).name("Pedro").hobby("chess");
+        assertEquals(Integer.valueOf(30), UserMeta.age.get(user));
+        assertEquals("Pedro", UserMeta.name.get(user));
+        assertEquals(int.class, UserMeta.age.type());
+        assertTrue(UserMeta.name.isInitial());
+        assertTrue(UserMeta.name.isNonNull());
+        assertFalse(UserMeta.hobby.isReadOnly());
+
+        UserMeta.hobby.set(user, "golf");
+        assertEquals("golf", user.hobby());
+        assertEquals(7, UserMeta.PROPERTIES.size());
+        assertSame(UserMeta.age, UserMeta.PROPERTIES.get(0));
+        assertEquals(3, UserMeta.BirthInfoMeta.DateMeta.PROPERTIES.size());
+
+        final Felix felix = Felix.of();
+        assertEquals("Felix", FelixMeta.name.get(felix));
+        assertTrue(FelixMeta.name.isFixed());
+    }
+
+    @Test
+    public void testIndexedAccess() {
+        final User user = User.of().age(30).name("Pedro").active(true);
+        final DataBean bean = (DataBean) user;
+        assertEquals(30, bean.$getInt(UserMeta.age.index()));
+        assertEquals("Pedro", bean.$get(UserMeta.name.index()));
+        assertTrue(bean.$getBoolean(UserMeta.active.index()));
+
+        bean.$set(UserMeta.hobby.index(), "chess");
+        bean.$setBoolean(UserMeta.active.index(), false);
+        assertEquals("chess", user.hobby());
+        assertFalse(user.active());
+
+        // indexes are shared by the bean hierarchy
+        final DataBean felix = (DataBean) Felix.of();
+        assertEquals(CatMeta.name.index(), FelixMeta.name.index());
+        assertEquals("Felix", felix.$get(CatMeta.name.index()));
+        assertTrue(felix.$getBoolean(FelixMeta.cutie.index()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndexedAccessWrongType() {
+        ((DataBean) User.of().age(30).name("Pedro")).$getInt(UserMeta.name.index());
+    }
+
+    @Test
+    public void testBinaryCodec() {
+        final User user = User.of().age(30).name("Pedro").hobby(null).active(false)
+                .contact(Contact.of().phone("555123456").address(Address.of().city("Ávila")))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(1990, 5, 17)));
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        UserCodec.write(buffer, user);
+        final Felix felix = Felix.of().age(null);
+        FelixCodec.write(buffer, felix);
+        final Rectangle rectangle = Rectangle.of(1, 2, 3, 4);
+        RectangleCodec.write(buffer, rectangle);
+        buffer.flip();
+
+        assertEquals(user, UserCodec.read(buffer));
+        assertEquals(felix, FelixCodec.read(buffer));
+        assertEquals(rectangle, RectangleCodec.read(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testBinaryCodecOtherImplementations() {
+        final User user = User.of(30, "Pedro")
+                .contact(Contact.view(Contact.of().phone("555123456").address(Address.of().city("Madrid"))))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(1990, 5, 17)));
+        final User expected = user.deepCopy();
+        final Felix felix = Felix.of().age(null);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        UserCodec.write(buffer, user);
+        UserCodec.write(buffer, User.view(expected));
+        FelixCodec.write(buffer, Felix.view(felix));
+        buffer.flip();
+        assertEquals(expected, UserCodec.read(buffer));
+        assertEquals(expected, UserCodec.read(buffer));
+        assertEquals(felix, FelixCodec.read(buffer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBinaryCodecSubclass() {
+        CatCodec.write(ByteBuffer.allocate(256), Felix.of());
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        final User user = User.of().age(30).name("Pedro \"Ávila\"\n").hobby(null).active(false)
+                .contact(Contact.of().phone("555123456").address(Address.of().city("Madrid")))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(1990, 5, 17)));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final JsonWriter out = new JsonWriter(bytes);
+        UserJson.write(out, user);
+        FelixJson.write(out, Felix.of().age(null));
+        out.flush();
+
+        final JsonReader in = new JsonReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(user, UserJson.read(in));
+        assertEquals(Felix.of().age(null), FelixJson.read(in));
+    }
+
+    @Test
+    public void testJsonOtherImplementations() throws IOException {
+        final User user = User.of(30, "Pedro")
+                .contact(Contact.view(Contact.of().phone("555123456").address(Address.of().city("Madrid"))));
+        final User expected = user.deepCopy();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final JsonWriter out = new JsonWriter(bytes);
+        UserJson.write(out, user);
+        UserJson.write(out, User.view(expected));
+        out.flush();
+
+        final JsonReader in = new JsonReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(expected, UserJson.read(in));
+        assertEquals(expected, UserJson.read(in));
+    }
+
+    @Test
+    public void testJsonDefaults() throws IOException {
+        final User user = UserJson.read(json("{\"unknown\": [1, {\"a\": null}], \"name\": \"Pedro\", " +
+                "\"age\": 30, \"comments\": \"\\u00c1\"}"));
+        assertEquals("Pedro", user.name());
+        assertEquals("unknown", user.hobby());
+        assertTrue(user.active());
+        assertEquals("Á", user.comments());
+        assertEquals(Felix.of(), FelixJson.read(json("{\"name\": \"Garfield\"}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJsonMissingProperty() throws IOException {
+        UserJson.read(json("{\"name\": \"Pedro\", \"comments\": \"\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJsonNullProperty() throws IOException {
+        UserJson.read(json("{\"age\": 30, \"name\": null, \"comments\": \"\"}"));
+    }
+
+    @Test
+    public void testJsonMalformed() throws IOException {
+        for (String malformed : Arrays.asList(
+                "{,\"age\": 30, \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"age\": 30 \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"age\": 30,, \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"age\": 30, \"name\": \"Pedro\", \"comments\": \"\",}",
+                "{\"unknown\": {\"a\": 1 \"b\": 2}, \"age\": 30, \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"age\": 30, \"name\": \"a\\xb\", \"comments\": \"\"}",
+                "{\"age\": 30, \"name\": \"a\u0001b\", \"comments\": \"\"}",
+                "{\"age\": 30, \"name\": \"a\nb\", \"comments\": \"\"}",
+                "{\"age\": 007, \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"age\": -01, \"name\": \"Pedro\", \"comments\": \"\"}",
+                "{\"unknown\": 007.5, \"age\": 30, \"name\": \"Pedro\", \"comments\": \"\"}")) {
+            try {
+                UserJson.read(json(malformed));
+                fail(malformed);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testJsonSurrogates() throws IOException {
+        assertEquals("?A", json("\"\\uD800\\u0041\"").nextString());
+        assertEquals("?\uD83D\uDE00", json("\"\\uD800\\uD83D\\uDE00\"").nextString());
+        assertEquals("?", json("\"\\uDE00\"").nextString());
+    }
+
+    private static JsonReader json(String json) {
+        return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testMappedRecordStore() throws IOException {
+        final Path file = Files.createTempFile("rectangles", ".db");
+        try {
+            // small segments to exercise records spread over several mapped regions
+            try (MappedRecordStore<Rectangle> store = new MappedRecordStore<>(file, RectangleRecord.LAYOUT,
+                    RectangleRecord.SIZE * 3))
+            {
+                for (int i = 0; i < 10; i++)
+                    assertEquals(i, store.append(Rectangle.of(Point.of(i, -i), Dimension.of(i * 2, i * 3))));
+                store.append(Rectangle.of(null, Dimension.of(1, 1)));
+
+                final RecordView<Rectangle> view = store.newView();
+                final Rectangle rectangle = store.read(7, view);
+                assertEquals(7, rectangle.point().x());
+                assertEquals(-7, rectangle.point().y());
+                assertEquals(21, rectangle.size().height());
+                assertEquals(Rectangle.of(Point.of(7, -7), Dimension.of(14, 21)), ((RectangleRecord) rectangle).toBean());
+                assertEquals(Rectangle.of(Point.of(7, -7), Dimension.of(14, 21)), rectangle);
+                assertEquals(rectangle, Rectangle.of(Point.of(7, -7), Dimension.of(14, 21)));
+                assertEquals(Rectangle.of(Point.of(7, -7), Dimension.of(14, 21)).hashCode(), rectangle.hashCode());
+                assertEquals(Rectangle.of(Point.of(8, -8), Dimension.of(14, 21)), rectangle.ofPoint(Point.of(8, -8)));
+                // the view is moved to another record
+                assertNull(store.read(10, view).point());
+            }
+            try (MappedRecordStore<Rectangle> store = new MappedRecordStore<>(file, RectangleRecord.LAYOUT)) {
+                assertEquals(11, store.size());
+                final List<Integer> widths = new ArrayList<>();
+                store.forEach(it -> widths.add(it.size().width()));
+                assertEquals(11, widths.size());
+                assertEquals(Integer.valueOf(18), widths.get(9));
+                assertEquals(Integer.valueOf(1), widths.get(10));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testColumns() {
+        final UserColumns users = new UserColumns(2);
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, users.add(User.of(20 + i, "User" + i).comments("c" + i)));
+        assertEquals(10, users.size());
+
+        final int[] ages = users.ages();
+        int total = 0;
+        for (int i = 0; i < users.size(); i++)
+            total += ages[i];
+        assertEquals(245, total);
+        assertEquals("User3", users.names()[3]);
+        assertEquals("unknown", users.hobbies()[3]);
+
+        final User user = users.get(4);
+        assertEquals(24, user.age());
+        assertTrue(user.active());
+        user.hobby("chess").active(false);
+        assertEquals("chess", users.hobbies()[4]);
+        assertFalse(users.actives()[4]);
+        assertEquals(User.of(24, "User4").comments("c4").hobby("chess").active(false), users.get(4).toBean());
+        assertEquals(users.get(4).toBean(), users.get(4));
+        assertEquals(users.get(4), users.get(4).toBean());
+        assertEquals(users.get(4).toBean().hashCode(), users.get(4).hashCode());
+        assertEquals(users.get(4).toBean().toString(), users.get(4).toString());
+        assertEquals(25, user.ofAge(25).age());
+        assertEquals(24, users.ages()[4]);
+    }
+
+    @Test
+    public void testColumnQuery() {
+        final UserColumns users = new UserColumns();
+        // more rows than a single scan chunk
+        for (int i = 0; i < 20000; i++)
+            users.add(User.of(i % 100, "User" + i).hobby(i % 2 == 0 ? "chess" : "golf").active(i % 3 == 0));
+
+        assertEquals(20000, users.query().count());
+        final ColumnQuery<User> adults = users.query().filter(greaterThan(UserMeta.age, 17));
+        assertEquals(16400, adults.count());
+        assertEquals(16400 * (18 + 99) / 2, adults.sum(UserMeta.age));
+        assertEquals(58.5, adults.average(UserMeta.age).getAsDouble(), 1e-9);
+        assertEquals(Integer.valueOf(18), adults.min(UserMeta.age).get());
+        assertEquals(Integer.valueOf(99), adults.max(UserMeta.age).get());
+        assertEquals("User9999", users.query().max(UserMeta.name).get());
+        assertEquals(200, users.query().filter(equalTo(UserMeta.age, 42)).count());
+        assertEquals(6667, users.query().filter(isTrue(UserMeta.active)).count());
+        assertEquals(0, users.query().filter(lessThan(UserMeta.age, 0)).count());
+        assertFalse(users.query().filter(lessThan(UserMeta.age, 0)).min(UserMeta.age).isPresent());
+
+        final Map<String, ColumnQuery<User>> byHobby = adults.groupBy(UserMeta.hobby);
+        assertEquals(2, byHobby.size());
+        assertEquals(8200, byHobby.get("chess").count());
+        assertEquals(Integer.valueOf(98), byHobby.get("chess").max(UserMeta.age).get());
+        assertEquals(Integer.valueOf(99), byHobby.get("golf").max(UserMeta.age).get());
+        assertEquals(200, byHobby.get("golf").filter(equalTo(UserMeta.age, 99)).count());
+        assertEquals(100, users.query().groupBy(UserMeta.age).size());
+    }
+
+    @Test
+    public void testColumnQueryNulls() {
+        final FelixColumns cats = new FelixColumns();
+        cats.add(Felix.of().age(3));
+        cats.add(Felix.of().age(null));
+        cats.add(Felix.of().age(7));
+        assertEquals(1, cats.query().filter(greaterThan(FelixMeta.age, 4)).count());
+        assertEquals(1, cats.query().filter(isNull(FelixMeta.age)).count());
+        assertEquals(10, cats.query().sum(FelixMeta.age));
+        assertEquals(Integer.valueOf(3), cats.query().min(FelixMeta.age).get());
+        assertEquals(16.5, cats.query().sumDouble(FelixMeta.weight), 1e-9);
+    }
+
+    @Test
+    public void testIndex() {
+        final ProductIndex index = new ProductIndex();
+        final List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Product product = Product.of().category(i % 10).name("Product" + i).stock(i * 1_000_000_000L);
+            products.add(product);
+            index.add(product);
+        }
+        assertEquals(100, index.size());
+        assertEquals(10, index.byCategory(3).size());
+        assertEquals(products.get(13), index.byCategory(3).get(1));
+        assertEquals(Collections.singletonList(products.get(42)), index.byName("Product42"));
+        assertEquals(Collections.singletonList(products.get(7)), index.byStock(7_000_000_000L));
+        assertTrue(index.byCategory(10).isEmpty());
+
+        // setters keep the index up to date
+        products.get(13).category(10).name("Renamed");
+        assertEquals(9, index.byCategory(3).size());
+        assertFalse(index.byCategory(3).contains(products.get(13)));
+        assertEquals(Collections.singletonList(products.get(13)), index.byCategory(10));
+        assertTrue(index.byName("Product13").isEmpty());
+        assertEquals(Collections.singletonList(products.get(13)), index.byName("Renamed"));
+
+        assertTrue(index.remove(products.get(13)));
+        assertFalse(index.remove(products.get(13)));
+        assertEquals(99, index.size());
+        assertTrue(index.byCategory(10).isEmpty());
+        products.get(13).category(3);
+        assertEquals(9, index.byCategory(3).size());
+
+        try {
+            index.add(products.get(0));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // already indexed
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final SessionBean session = new SessionBean("s1");
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    session.getAndAddRequests(1);
+                    session.updateBytes(it -> it + 2);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(40_000, session.requests());
+        assertEquals(80_000L, session.bytes());
+
+        assertEquals("", session.lastPath());
+        assertFalse(session.compareAndSetLastPath("/index", "/users"));
+        assertTrue(session.compareAndSetLastPath(session.lastPath(), "/users"));
+        assertEquals("/users/1", session.updateLastPath(it -> it + "/1"));
+        assertTrue(session.compareAndSetRequests(40_000, 0));
+        assertEquals(0, session.requests());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConcurrentNullCheck() {
+        new SessionBean("s1").updateLastPath(it -> null);
+    }
+
+    @Test
+    public void testFreeze() {
+        final Order order = Order.of("o1")
+                .shipping(Order.Shipping.of().carrier("UPS"))
+                .item(Order.Item.of("Chair", 2));
+        assertFalse(order.isFrozen());
+        assertSame(order, order.freeze());
+        assertTrue(order.isFrozen());
+        assertTrue(order.shipping().isFrozen());
+        assertTrue(order.shipping().destination().isFrozen());
+        assertEquals("none", order.note());
+
+        for (Runnable change : Arrays.<Runnable>asList(
+                () -> order.paid(true),
+                () -> order.note("gift"),
+                () -> order.shipping().carrier("DHL"),
+                () -> order.shipping().destination().street("Mayor"),
+                () -> ((DataBean) order).$set(OrderMeta.shipping.index(), null))) {
+            try {
+                change.run();
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+        assertEquals("UPS", order.shipping().carrier());
+
+        // copies are mutable
+        final Order copy = order.ofId("o2");
+        assertFalse(copy.isFrozen());
+        copy.paid(true);
+        assertFalse(order.paid());
+    }
+
+    @Test
+    public void testFreezeSharedAndViews() {
+        // nested beans shared by a shallow copy are frozen with the source
+        final Order order = Order.of("o1").shipping(Order.Shipping.of().carrier("UPS"));
+        final Order copy = order.with().paid(true).build();
+        final Order deepCopy = order.deepCopy();
+        order.freeze();
+        assertFalse(copy.isFrozen());
+        assertTrue(copy.shipping().isFrozen());
+        copy.paid(false);
+        try {
+            copy.shipping().carrier("DHL");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertFalse(deepCopy.shipping().isFrozen());
+        deepCopy.shipping().carrier("DHL");
+
+        // only beans can be frozen
+        final OrderColumns orders = new OrderColumns();
+        orders.add(Order.of("o2"));
+        for (Order value : Arrays.asList(Order.view(Order.of("o3")), orders.get(0))) {
+            try {
+                value.freeze();
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            assertFalse(value.isFrozen());
+        }
+
+        // nested views are replaced by frozen bean copies
+        final Order.Shipping shipping = Order.Shipping.of().carrier("UPS");
+        final Order withView = Order.of("o4").shipping(Order.Shipping.view(shipping)).freeze();
+        assertTrue(withView.shipping() instanceof OrderBean.ShippingBean);
+        assertTrue(withView.shipping().isFrozen());
+        assertFalse(shipping.isFrozen());
+        assertEquals(shipping, withView.shipping());
+    }
+
+    @Test
+    public void testFreezeConcurrent() {
+        final CounterBean counter = (CounterBean) Counter.of().hits(1).total(10L).label("a");
+        counter.getAndAddHits(1);
+        counter.freeze();
+        for (Runnable change : Arrays.<Runnable>asList(
+                () -> counter.getAndAddHits(5),
+                () -> counter.compareAndSetHits(2, 3),
+                () -> counter.updateTotal(it -> it + 1),
+                () -> counter.compareAndSetLabel(counter.label(), "b"),
+                () -> counter.updateLabel(it -> it + "b"))) {
+            try {
+                change.run();
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+        assertEquals(Counter.of().hits(2).total(10L).label("a"), counter);
+    }
+
+    @Test
+    public void testView() {
+        final User user = User.of(21, "Pedro").contact(Contact.of().phone("555"));
+        assertSame(user, User.cast(user));
+        final User view = User.view(user);
+        assertTrue(view instanceof UserView);
+        assertSame(view, User.view(view));
+        assertEquals(view, user);
+        assertEquals(user, view);
+        assertEquals(user.hashCode(), view.hashCode());
+        assertEquals(user.toString(), view.toString());
+        // only the values of the same data class are equal
+        final Felix felix = Felix.of();
+        assertEquals(felix, Felix.view(felix));
+        assertNotEquals(felix, Cat.view(felix));
+        assertNotEquals(Cat.view(felix), felix);
+
+        // reads are delegated to the source
+        user.contact().address().street("Mayor");
+        assertEquals("Mayor", view.contact().address().street());
+        assertSame(view.contact(), view.contact());
+        user.contact(Contact.of().phone("777"));
+        assertEquals("777", view.contact().phone());
+
+        try {
+            view.contact().phone("000");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        final User older = view.ofAge(22);
+        assertTrue(older instanceof UserBean);
+        assertEquals(22, older.age());
+        assertEquals(21, user.age());
+
+        final Address address = Address.cast(new IAddress() {
+            public String street() { return "Lenina"; }
+            public String city() { return "Moscow"; }
+        });
+        assertEquals(address, Address.of().street("Lenina").city("Moscow"));
+    }
+
+    @Test
+    public void testDeepCopy() {
+        final User user = User.of(21, "Pedro")
+                .contact(Contact.of().phone("555"))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(2000, 1, 1)).place("Madrid"));
+        user.contact().address().street("Mayor");
+        final User copy = user.deepCopy();
+        assertEquals(user, copy);
+        assertNotSame(user.contact(), copy.contact());
+        assertNotSame(user.contact().address(), copy.contact().address());
+        assertNotSame(user.birthInfo(), copy.birthInfo());
+        // immutable values are shared
+        assertSame(user.birthInfo().date(), copy.birthInfo().date());
+        assertSame(user.name(), copy.name());
+
+        copy.contact().address().street("Lenina");
+        assertEquals("Mayor", user.contact().address().street());
+
+        // other implementations are read through the accessors
+        final User fromView = User.from(User.view(user));
+        assertTrue(fromView instanceof UserBean);
+        assertEquals(user, fromView);
+        assertNotSame(user.contact(), fromView.contact());
+
+        final Rectangle rectangle = Rectangle.of(1, 2, 3, 4);
+        assertSame(rectangle, Rectangle.from(rectangle));
+        final Cat felix = Felix.of();
+        assertTrue(Cat.from(felix) instanceof Felix);
+        assertNull(User.from(null));
+    }
+
+    @Test
+    public void testDeepCopyAbstractNested() {
+        final Shelter shelter = Shelter.of().city("Riga").pet(Felix.of().age(7));
+        final Shelter copy = shelter.deepCopy();
+        assertEquals(shelter, copy);
+        assertNotSame(shelter.pet(), copy.pet());
+        assertTrue(copy.pet() instanceof Felix);
+
+        // other implementations of abstract classes are copied by their concrete data class
+        final ICat tom = plainCat("Tom");
+        final Shelter fromTom = Shelter.from(shelter(tom));
+        assertTrue(fromTom.pet() instanceof Cat);
+        assertEquals(Cat.from(tom), fromTom.pet());
+
+        try {
+            Shelter.from(shelter(plainFish()));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testViewAbstractNested() {
+        final ICat tom = plainCat("Tom");
+        final Shelter view = Shelter.view(shelter(tom));
+        assertTrue(view.pet() instanceof CatView);
+        assertEquals(Cat.from(tom), view.pet());
+        final Shelter bean = ((ShelterView) view).toBean();
+        assertEquals(view, bean);
+        assertTrue(bean.pet() instanceof Cat);
+        assertFalse(bean.pet() instanceof CatView);
+
+        // beans are viewed read-only as well
+        final Shelter shelter = Shelter.of().pet(Felix.of());
+        assertEquals(shelter.pet(), Shelter.view(shelter).pet());
+        assertTrue(Shelter.view(shelter).pet() instanceof FelixView);
+
+        try {
+            Shelter.view(shelter(plainFish())).pet();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static ICat plainCat(String name) {
+        return new ICat() {
+            public String name() { return name; }
+            public boolean cutie() { return true; }
+            public String color() { return "grey"; }
+        };
+    }
+
+    private static IPet plainFish() {
+        return new IPet() {
+            public String type() { return "Fish"; }
+            public String name() { return "Nemo"; }
+            public Integer age() { return 1; }
+            public String sound() { return null; }
+        };
+    }
+
+    private static IShelter shelter(IPet pet) {
+        return new IShelter() {
+            public String city() { return "Riga"; }
+            public IPet pet() { return pet; }
+        };
+    }
+
+    @Test
+    public void testMapper() {
+        final DataBeanMapper mapper = new DataBeanMapper();
+        final User user = User.of(21, "Pedro")
+                .contact(Contact.of().phone("555"))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(2000, 1, 1)).place("Madrid"));
+
+        final Person person = (Person) mapper.copy(user, IPerson.class);
+        assertEquals("Pedro", person.name());
+        assertEquals(21, person.age());
+        assertNull(person.email());
+        assertEquals(user.contact(), person.contact());
+        assertNotSame(user.contact(), person.contact());
+        assertEquals("Madrid", person.birthInfo().place());
+        assertEquals(person, DataBeanMapper.personFromUser(User.view(user)));
+
+        // birth info of the user requires the date, so it isn't mapped back
+        final User back = (User) mapper.copy(person.email("pedro@mail.com"), User.class);
+        assertEquals(User.of(21, "Pedro").contact(Contact.of().phone("555")), back);
+        assertNull(back.birthInfo());
+
+        // same class is deep copied
+        final User copy = (User) mapper.copy(user, User.class);
+        assertEquals(user, copy);
+        assertNotSame(user.contact(), copy.contact());
+        assertNull(mapper.copy(null, User.class));
+
+        assertEquals(Address.of(), mapper.create(Address.class));
+        assertEquals(Address.of(), mapper.create(IAddress.class));
+        for (Runnable unmapped : Arrays.<Runnable>asList(
+                () -> mapper.create(User.class),
+                () -> mapper.copy(Address.of(), User.class),
+                // shared names do not make the unrelated classes mapped
+                () -> mapper.copy(Product.of(), Person.class),
+                () -> mapper.copy(Felix.of(), Person.class))) {
+            try {
+                unmapped.run();
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTrackChanges() {
+        final ProductBean product = (ProductBean) Product.of().category(1).name("Chair").price(10.0);
+        assertEquals(1L << ProductMeta.category.index() | 1L << ProductMeta.name.index() |
+                1L << ProductMeta.price.index(), product.$dirtyMask());
+
+        product.$clearDirty();
+        assertEquals(0, product.$dirtyMask());
+        product.stock(5);
+        ((DataBean) product).$setDouble(ProductMeta.price.index(), 12.5);
+        assertEquals(1L << ProductMeta.stock.index() | 1L << ProductMeta.price.index(), product.$dirtyMask());
+
+        // only the changed properties are copied
+        final ProductBean snapshot = (ProductBean) Product.of().category(2).name("Table");
+        snapshot.$clearDirty();
+        product.$copyDirtyTo(snapshot);
+        assertEquals(Product.of().category(2).name("Table").stock(5).price(12.5), snapshot);
+        assertEquals(product.$dirtyMask(), snapshot.$dirtyMask());
+
+        // copies start clean
+        assertEquals(0, ((ProductBean) product.with().category(3).build()).$dirtyMask());
+    }
+
+    @Test
+    public void testTrackChangesHierarchy() {
+        final TruckBean truck = (TruckBean) Truck.of();
+        truck.plate("B1");
+        truck.$clearDirty();
+        truck.speed(90);
+        truck.load(7);
+        assertEquals(1L << TruckMeta.speed.index() | 1L << TruckMeta.load.index(), truck.$dirtyMask());
+
+        // a bean of the superclass gets the inherited properties only
+        final Vehicle vehicle = Vehicle.of();
+        vehicle.plate("A1");
+        truck.$copyDirtyTo(vehicle);
+        final Vehicle expectedVehicle = Vehicle.of();
+        expectedVehicle.plate("A1").speed(90);
+        assertEquals(expectedVehicle, vehicle);
+
+        final Truck other = Truck.of();
+        truck.$copyDirtyTo(other);
+        final Truck expectedTruck = Truck.of();
+        expectedTruck.speed(90);
+        expectedTruck.load(7);
+        assertEquals(expectedTruck, other);
+    }
+
+    @Test
+    public void testTrackChangesWide() {
+        final WideBean wide = (WideBean) Wide.of();
+        assertArrayEquals(new long[2], wide.$dirtyMask());
+        wide.p1(1).p63(63).p64(64).label("wide");
+        final long[] mask = {1L << WideMeta.p1.index() | 1L << WideMeta.p63.index(),
+                1L << (WideMeta.p64.index() - 64) | 1L << (WideMeta.label.index() - 64)};
+        assertArrayEquals(mask, wide.$dirtyMask());
+        // the mask is a copy
+        wide.$dirtyMask()[0] = 0;
+        assertArrayEquals(mask, wide.$dirtyMask());
+
+        // only the changed properties are copied
+        final WideBean snapshot = (WideBean) Wide.of().p2(2).p65(65);
+        snapshot.$clearDirty();
+        assertArrayEquals(new long[2], snapshot.$dirtyMask());
+        wide.$copyDirtyTo(snapshot);
+        assertEquals(Wide.of().p1(1).p2(2).p63(63).p64(64).p65(65).label("wide"), snapshot);
+        assertArrayEquals(mask, snapshot.$dirtyMask());
+
+        wide.$clearDirty();
+        assertArrayEquals(new long[2], wide.$dirtyMask());
+        assertArrayEquals(new long[2], ((WideBean) snapshot.with().p66(66).build()).$dirtyMask());
+
+        final WideDiff diff = WideDiff.diff(Wide.of(), Wide.of().p63(1).p65(2));
+        assertArrayEquals(new long[] {1L << 63, 1L << 1}, diff.changed());
+        assertEquals(Wide.of().p63(1).p65(2), WideDiff.patch(Wide.of(), diff));
+    }
+
+    @Test
+    public void testDiff() {
+        final User from = User.of(21, "Pedro")
+                .contact(Contact.of().phone("555123456").address(Address.of().city("Madrid").street("Mayor")));
+        final User to = User.of(22, "Pedro").hobby("chess")
+                .contact(Contact.of().phone("555123456").address(Address.of().city("Madrid").street("Alcala")));
+
+        final UserDiff diff = UserDiff.diff(from, to);
+        assertFalse(diff.isEmpty());
+        assertEquals(1L << UserMeta.age.index() | 1L << UserMeta.contact.index() | 1L << UserMeta.hobby.index(),
+                diff.changed());
+        assertTrue(UserDiff.diff(from, from.with().build()).isEmpty());
+
+        // age is read-only, so a copy is patched
+        final User target = from.with().build();
+        final User patched = UserDiff.patch(target, diff);
+        assertEquals(to, patched);
+        assertEquals(from, target);
+        // nested beans shared with the source are not modified
+        assertEquals("Mayor", from.contact().address().street());
+        assertSame(from.contact(), target.contact());
+
+        // replaced nested bean
+        final User replaced = UserDiff.patch(from.with().build(), UserDiff.diff(from, to.ofName("Silvia").contact(null)));
+        assertEquals("Silvia", replaced.name());
+        assertNull(replaced.contact());
+
+        // mutable properties are set on the target
+        final Contact contact = Contact.of().phone("555").address(from.contact().address());
+        assertSame(contact, ContactDiff.patch(contact, ContactDiff.diff(contact,
+                Contact.of().phone("777").address(to.contact().address()))));
+        assertEquals("777", contact.phone());
+        assertEquals("Alcala", contact.address().street());
+        assertEquals("Mayor", from.contact().address().street());
+
+        final Felix felix = Felix.of();
+        final Felix patchedFelix = FelixDiff.patch(felix, FelixDiff.diff(Felix.of(), Felix.of().age(7).ofSound("Meow")));
+        assertEquals(Integer.valueOf(7), patchedFelix.age());
+        assertEquals("Meow", patchedFelix.sound());
+        assertEquals(Felix.of(), felix);
+
+        // cached hashes and interned values are never modified
+        final Point point = Point.of(1, 2);
+        point.hashCode();
+        final Point movedPoint = PointDiff.patch(point, PointDiff.diff(point, Point.of(5, 6)));
+        assertEquals(Point.of(5, 6), movedPoint);
+        assertEquals(Point.of(5, 6).hashCode(), movedPoint.hashCode());
+        assertEquals(Point.of(1, 2), point);
+        assertEquals(Point.of(1, 2).hashCode(), point.hashCode());
+        final Color red = Color.of(255, 0, 0);
+        assertSame(Color.of(0, 0, 255), ColorDiff.patch(red, ColorDiff.diff(red, Color.of(0, 0, 255))));
+        assertEquals(255, red.red());
+    }
+
+    @Test
+    public void testPathCopy() {
+        final User pedro = User.of(21, "Pedro")
+                .contact(Contact.of().phone("555123456").address(Address.of().city("Madrid").street("Mayor")))
+                .birthInfo(User.BirthInfo.of(User.BirthInfo.Date.of(1987, 2, 10)).place("Coopertown"));
+
+        final User moved = pedro.ofContactAddressStreet("Alcala");
+        assertEquals("Alcala", moved.contact().address().street());
+        assertEquals("Madrid", moved.contact().address().city());
+        assertEquals("555123456", moved.contact().phone());
+        // source tree is not modified, untouched subtrees are shared
+        assertEquals("Mayor", pedro.contact().address().street());
+        assertNotSame(pedro.contact(), moved.contact());
+        assertSame(pedro.birthInfo(), moved.birthInfo());
+
+        final User born = pedro.ofBirthInfoDateYear(1990);
+        assertEquals(1990, born.birthInfo().date().year());
+        assertEquals(1987, pedro.birthInfo().date().year());
+        assertSame(pedro.contact(), born.contact());
+
+        // absent nested beans are created
+        assertEquals("Sol", User.of(30, "Silvia").ofContactAddressStreet("Sol").contact().address().street());
+
+        final Rectangle rectangle = Rectangle.of(Point.of(1, 2), Dimension.of(10, 20));
+        rectangle.hashCode();
+        final Rectangle moved2 = rectangle.ofPointX(5);
+        assertEquals(Rectangle.of(Point.of(5, 2), Dimension.of(10, 20)), moved2);
+        assertEquals(Rectangle.of(Point.of(5, 2), Dimension.of(10, 20)).hashCode(), moved2.hashCode());
+        assertSame(rectangle.size(), moved2.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPathCopyNullRequiredNested() {
+        User.of(21, "Pedro").ofBirthInfoPlace("Coopertown");
+    }
+
+    @Test
+    public void testLazyDefaults() throws ReflectiveOperationException, IOException {
+        final java.lang.reflect.Field addressField = ProfileBean.class.getDeclaredField("address");
+        addressField.setAccessible(true);
+        final Profile profile = Profile.of("pedro");
+        assertNull(addressField.get(profile));
+        // materialized on the first read
+        final Address address = profile.address();
+        assertNotNull(address);
+        assertSame(address, addressField.get(profile));
+        assertSame(address, profile.address());
+        assertEquals(Profile.of("pedro"), profile);
+
+        // only the getters set the defaults
+        final Profile unread = Profile.of("pedro");
+        assertEquals(profile, unread);
+        assertEquals(unread, profile);
+        assertEquals(profile.hashCode(), unread.hashCode());
+        assertEquals(profile.toString(), unread.toString());
+        ProfileCodec.write(ByteBuffer.allocate(256), unread);
+        ProfileJson.write(new JsonWriter(new ByteArrayOutputStream()), unread);
+        assertTrue(ProfileDiff.diff(profile, unread).isEmpty());
+        new ProfileColumns().add(unread);
+        assertNull(addressField.get(unread));
+
+        // presence bit keeps null values of nullable properties
+        final Profile nullHobby = Profile.of("pedro").hobby(null);
+        assertNull(nullHobby.hobby());
+        assertEquals("unknown", Profile.of("pedro").hobby());
+        assertNull(nullHobby.ofLogin("silvia").hobby());
+        assertNull(nullHobby.with().build().hobby());
+        assertEquals(Profile.of("pedro"), Profile.of("pedro").ofLogin("silvia").ofLogin("pedro"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPropertyMetadataReadOnly() {
+        UserMeta.name.set(User.of().age(30).name("Pedro"), "Juan");
+    }
+
     @Test(expected = NullPointerException.class)
     public void testSetNulls1() {
         User.of().age(12)
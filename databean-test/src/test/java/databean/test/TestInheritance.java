@@ -24,6 +24,60 @@ public class TestInheritance {
         assertFalse(Dog.of().name("Pit").hasHorn());
         assertTrue(Dog.of().name("Pit").hasTail());
     }
+    @Test
+    public void testCopySetterKeepsInheritedValues() {
+        final Felix felix = Felix.of().age(9);
+        final Felix copy = felix.ofWeight(6.0);
+        assertNotSame(felix, copy);
+        assertEquals(6.0, copy.weight(), 0.0);
+        assertEquals(Integer.valueOf(9), copy.age());
+        assertEquals("Murrraaayy", copy.sound());
+        assertEquals("ginger", copy.color());
+    }
+    @Test
+    public void testCopyWithInheritedProperties() {
+        final Felix felix = Felix.of().with()
+                .weight(4.0)
+                .sound("Purr")
+                .build();
+        assertEquals(4.0, felix.weight(), 0.0);
+        assertEquals("Purr", felix.sound());
+        assertEquals("ginger", felix.color());
+    }
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCopyWithFixedProperties() {
+        Felix.of().with().color("black");
+    }
+    @Test
+    public void testUnboxedProperties() {
+        final Dog dog = Dog.of().name("Pit");
+        assertEquals(4, dog.legsAsInt());
+        assertEquals(Integer.valueOf(4), dog.legs());
+        assertFalse(dog.hasHornAsBoolean());
+        final Dog tripod = dog.ofLegs(3);
+        assertEquals(3, tripod.legsAsInt());
+        assertNotEquals(dog, tripod);
+        assertEquals(dog, tripod.ofLegs(4));
+    }
+    @Test(expected = NullPointerException.class)
+    public void testUnboxedPropertiesNulls() {
+        Dog.of().name("Pit").ofLegs(null);
+    }
+    @Test
+    public void testCompactLayoutFlags() {
+        final Dog dog = Dog.of().name("Pit");
+        final Dog horned = dog.ofHasHorn(true);
+        assertTrue(horned.hasHorn());
+        assertTrue(horned.hasTail());
+        final Dog tailless = horned.ofHasTail(false);
+        assertTrue(tailless.hasHorn());
+        assertFalse(tailless.hasTail());
+        assertNotEquals(horned, tailless);
+        assertEquals(dog, tailless.with().hasHorn(false).hasTail(true).build());
+        // flags of bean superclass are not affected
+        assertTrue(Felix.of().cutie());
+        assertFalse(Felix.of().cutie(false).cutie());
+    }
     @Test(expected = UnsupportedOperationException.class)
     public void testFixedProperties() {
         final Felix felix = Felix.of();